@@ -0,0 +1,162 @@
+package com.example.server_sent_event.config;
+
+import com.example.server_sent_event.service.Durability;
+import com.example.server_sent_event.service.SlowConsumerPolicy;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Tunables for news broadcasting, bound from the "news.*" properties
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "news")
+public class NewsProperties {
+
+    private final History history = new History();
+    private final Subscriber subscriber = new Subscriber();
+    private final Fanout fanout = new Fanout();
+    private final Heartbeat heartbeat = new Heartbeat();
+    private final Admission admission = new Admission();
+    private final Drain drain = new Drain();
+    private final Replay replay = new Replay();
+    private final Storage storage = new Storage();
+    private final Query query = new Query();
+
+    /**
+     * Limits of the in-memory replay history; the first limit reached evicts the oldest news
+     */
+    @Getter
+    @Setter
+    public static class History {
+        private int maxItems = 10_000;
+        private DataSize maxBytes = DataSize.ofMegabytes(64);
+        private Duration maxAge = Duration.ofHours(24);
+        private Duration evictionInterval = Duration.ofSeconds(10);
+    }
+
+    /**
+     * Per-subscriber delivery buffer and what happens when a slow client fills it
+     */
+    @Getter
+    @Setter
+    public static class Subscriber {
+        private int bufferSize = 256;
+        private SlowConsumerPolicy overflowPolicy = SlowConsumerPolicy.DROP_OLDEST;
+        private Duration retryHint = Duration.ofSeconds(5);
+        private Duration countInterval = Duration.ofMillis(250);
+    }
+
+    /**
+     * Parallel fan-out; 0 shards means one per available processor
+     */
+    @Getter
+    @Setter
+    public static class Fanout {
+        private int shards = 0;
+    }
+
+    /**
+     * SSE comment heartbeats for idle connections and reaping of connections whose writes stall
+     */
+    @Getter
+    @Setter
+    public static class Heartbeat {
+        private Duration interval = Duration.ofSeconds(15);
+        private Duration writeTimeout = Duration.ofSeconds(30);
+        private Duration tick = Duration.ofMillis(100);
+    }
+
+    /**
+     * Connection caps and the resource governor that sheds new subscribers under load
+     */
+    @Getter
+    @Setter
+    public static class Admission {
+        private int maxConnections = 10_000;
+        private int maxConnectionsPerClient = 20;
+        private double maxHeapUsage = 0.9;
+        private double maxCpuLoad = 0.95;
+        private Duration retryJitter = Duration.ofSeconds(10);
+        // Request header naming the client for the per-client cap, e.g. X-Forwarded-For behind a load
+        // balancer that sets it; empty uses the remote address. Clients can forge it without such a proxy
+        private String clientHeader = "";
+    }
+
+    /**
+     * Shutdown drain: connections are closed in batches over the window, each told to retry within it
+     */
+    @Getter
+    @Setter
+    public static class Drain {
+        private Duration window = Duration.ofSeconds(10);
+        private int batchSize = 200;
+    }
+
+    /**
+     * Replay rate limits in frames per second, node-wide and per connection (0 disables a limit),
+     * and how replays of nearby ranges are coalesced
+     */
+    @Getter
+    @Setter
+    public static class Replay {
+        private long nodeRate = 20_000;
+        private long nodeBurst = 2_000;
+        private long connectionRate = 2_000;
+        private long connectionBurst = 500;
+
+        // How far behind a subscriber's Last-Event-ID a running replay cursor may start for it to join
+        private long cohortWindow = 1_000;
+
+        // News events per write when replaying from storage
+        private int batchSize = 64;
+    }
+
+    /**
+     * Persistent news log in preallocated segment files; beyond maxSegments the oldest segment is
+     * compressed into the archive, or deleted if the archive is disabled
+     */
+    @Getter
+    @Setter
+    public static class Storage {
+        private boolean enabled = true;
+        private String directory = "data/news";
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        private int maxSegments = 64;
+        private Duration syncInterval = Duration.ofMillis(200);
+        private Durability durability = Durability.FSYNC;
+        private final Archive archive = new Archive();
+
+        /**
+         * Compressed archive that retired segments are rolled into instead of being deleted, one file
+         * of blockSize-news blocks per segment; beyond maxSize the oldest files are deleted
+         */
+        @Getter
+        @Setter
+        public static class Archive {
+            private boolean enabled = true;
+            private int blockSize = 256;
+            private int cacheBlocks = 64;
+            private DataSize maxSize = DataSize.ofGigabytes(10);
+        }
+    }
+
+    /**
+     * Read side of the news API; GET /news keeps its encoded body cached up to snapshotMaxSize
+     */
+    @Getter
+    @Setter
+    public static class Query {
+        private DataSize snapshotMaxSize = DataSize.ofMegabytes(16);
+
+        // Most ids accepted by one GET /news?ids= lookup
+        private int maxIds = 1_000;
+
+        // Most results one GET /news/search may ask for
+        private int maxSearchResults = 100;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.server_sent_event.controller;
+
+import com.example.server_sent_event.model.ConnectionInfo;
+import com.example.server_sent_event.service.NewsService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+@RestController
+public class AdminController {
+
+    private final NewsService newsService;
+
+    public AdminController(NewsService newsService) {
+        this.newsService = newsService;
+    }
+
+    /**
+     * List open news stream connections with their delivery statistics
+     */
+    @GetMapping("/admin/connections")
+    public Flux<ConnectionInfo> getConnections() {
+        return Flux.fromIterable(newsService.getConnections())
+            .map(connection -> new ConnectionInfo(
+                connection.getId(),
+                connection.getRemoteAddress(),
+                connection.getConnectedAt(),
+                connection.getEventsSent(),
+                connection.getBytesSent(),
+                connection.getLastWriteTime(),
+                connection.getBufferDepth()));
+    }
+}
@@ -1,26 +1,51 @@
 package com.example.server_sent_event.controller;
 
+import com.example.server_sent_event.config.NewsProperties;
 import com.example.server_sent_event.model.News;
+import com.example.server_sent_event.service.AdmissionControl;
+import com.example.server_sent_event.service.Durability;
+import com.example.server_sent_event.service.NewsFilter;
 import com.example.server_sent_event.service.NewsService;
+import com.example.server_sent_event.service.SseFrame;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 
 @RestController
 @Slf4j
 public class EventController {
 
     private final NewsService newsService;
+    private final AdmissionControl admissionControl;
+    private final String clientHeader;
+    private final int maxIds;
+    private final int maxSearchResults;
 
-    public EventController(NewsService newsService) {
+    public EventController(NewsService newsService, AdmissionControl admissionControl, NewsProperties properties) {
         this.newsService = newsService;
+        this.admissionControl = admissionControl;
+        this.clientHeader = properties.getAdmission().getClientHeader();
+        this.maxIds = properties.getQuery().getMaxIds();
+        this.maxSearchResults = properties.getQuery().getMaxSearchResults();
     }
 
     /**
@@ -40,23 +65,36 @@ public class EventController {
     /**
      * Subscribe to news updates via SSE
      * This endpoint will send all existing news and then stream new news as they arrive
+     * Reconnecting clients send Last-Event-ID (or ?since=) and only receive news after that id
+     * Frames are encoded once per news item and the same bytes are written to every subscriber
+     * Replays from storage are written as slices of the memory-mapped segment files, without a heap copy
+     * Optional category= and author= parameters (comma-separated) restrict the stream server-side
+     * and keywords= (comma-separated) to news whose title or content contains one of them
+     * Connections refused by admission control get a 503 with Retry-After and a jittered retry: hint
      */
     @GetMapping(value = "/news/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<News>> subscribeToNews() {
-        return newsService.getNewsStream()
-            .map(news -> {
-                try {
-                    return ServerSentEvent.<News>builder()
-                        .id(String.valueOf(news.getId()))
-                        .event("news")
-                        .data(news)
-                        .build();
-                } catch (Exception e) {
-                    log.error("Error creating SSE event for news: {}", e.getMessage(), e);
-                    throw new RuntimeException("Failed to create SSE event", e);
-                }
-            })
-            .concatWith(Flux.never())
+    public Mono<Void> subscribeToNews(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "category", required = false) List<String> category,
+            @RequestParam(value = "author", required = false) List<String> author,
+            @RequestParam(value = "keywords", required = false) List<String> keywords,
+            ServerHttpRequest request,
+            ServerHttpResponse response) {
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        String clientAddress = clientAddress(request);
+        AdmissionControl.Admission admission = admissionControl.tryAdmit(clientAddress);
+        if (!admission.isAdmitted()) {
+            long retryAfterMillis = admission.getRetryAfterMillis();
+            log.info("Refused subscriber from {}: {}", clientAddress, admission.getRejection());
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000));
+            return response.writeWith(Mono.just(bufferFactory.wrap(SseFrame.retry(retryAfterMillis).asByteBuffer())));
+        }
+        Flux<Mono<DataBuffer>> frames = newsService.getNewsFrames(resumeId(lastEventId, since),
+                NewsFilter.of(category, author, keywords), clientAddress)
+            .map(frame -> Mono.just(bufferFactory.wrap(frame.asByteBuffer())))
             .doOnSubscribe(subscription -> log.info("New subscriber connected to news stream"))
             .doOnCancel(() -> log.info("Subscriber disconnected from news stream"))
             .doOnError(error -> log.error("Error in SSE stream: {}", error.getMessage(), error))
@@ -64,28 +102,160 @@ public class EventController {
                 log.error("Fatal error in SSE stream: {}", error.getMessage(), error);
                 return Flux.empty();
             });
+        // Released with the response rather than the frames, which are never subscribed if the client is already gone
+        return response.writeAndFlushWith(frames)
+            .doFinally(signal -> admission.release());
+    }
+
+    /**
+     * Resolve the id to resume from; the Last-Event-ID header sent on reconnect wins over ?since=
+     */
+    private static Long resumeId(String lastEventId, Long since) {
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                return Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed Last-Event-ID: {}", lastEventId);
+            }
+        }
+        return since;
+    }
+
+    /**
+     * Client the per-client connection cap applies to: the first entry of the configured client
+     * header, if set and present, otherwise the remote address, which honours
+     * server.forward-headers-strategy
+     */
+    private String clientAddress(ServerHttpRequest request) {
+        if (clientHeader != null && !clientHeader.isBlank()) {
+            String value = request.getHeaders().getFirst(clientHeader);
+            if (value != null && !value.isBlank()) {
+                return value.split(",", 2)[0].trim();
+            }
+        }
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null ? null : address.getHostString();
     }
 
     /**
      * Add new news (for testing/admin purposes)
+     * Responds once the news is published, and with FSYNC durability (the default) once it is on disk
      */
     @PostMapping("/news")
     public Mono<News> addNews(@RequestBody NewsRequest request) {
-        News news = newsService.addNews(
+        return newsService.addNews(
             request.getTitle(), 
             request.getContent(), 
             request.getCategory(), 
-            request.getAuthor()
+            request.getAuthor(),
+            request.getDurability()
         );
-        return Mono.just(news);
     }
 
     /**
-     * Get all news
+     * Get news, oldest first, one page at a time
+     * ?after= is the id of the last news already seen, ?limit= the page size; without ?after= the
+     * in-memory window is returned, and ?after=0 exports the whole stored history. The response is
+     * written incrementally, as a streaming JSON array or, with Accept: application/x-ndjson, as
+     * one JSON document per line
+     * The plain JSON window is served from a cached snapshot, gzipped if accepted, with a strong
+     * ETag, so polling clients sending If-None-Match get 304 until the next publish
+     * ?ids=1,2,3 looks up just those news instead, in that order, skipping unknown ids
+     * ?category=, ?author= and a ?from=/?to= publish-time window (ISO date-times, inclusive) narrow
+     * the in-memory window through its secondary indexes, and scan storage when ?after= or ?from=
+     * reaches back past the window; pages still follow ?after= and ?limit=
+     */
+    @GetMapping(value = "/news", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<?>> getAllNews(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "ids", required = false) List<Long> ids,
+            @RequestParam(value = "category", required = false) List<String> category,
+            @RequestParam(value = "author", required = false) List<String> author,
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            ServerHttpRequest request) {
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        if (ids != null) {
+            if (ids.size() > maxIds) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxIds + " ids per request");
+            }
+            return Mono.just(ResponseEntity.ok().body(newsService.findNews(ids)));
+        }
+        NewsFilter filter = NewsFilter.of(category, author);
+        if (!filter.isEmpty() || from != null || to != null) {
+            if (from != null && to != null && from.isAfter(to)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+            }
+            return Mono.just(ResponseEntity.ok().body(newsService.queryNews(filter, from, to, after, limit)));
+        }
+        if (after != null || limit != null || acceptsNdjson(request)) {
+            return Mono.just(ResponseEntity.ok().body(newsService.getNews(after, limit)));
+        }
+        boolean gzip = acceptsGzip(request);
+        return newsService.getSnapshot()
+                .<ResponseEntity<?>>map(snapshot -> {
+                    // A matching If-None-Match is answered with 304 by the response entity handler
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .eTag(snapshot.eTag(gzip))
+                            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                    if (gzip) {
+                        response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    }
+                    return response.body(snapshot.body(gzip));
+                })
+                .switchIfEmpty(Mono.<ResponseEntity<?>>fromSupplier(
+                        () -> ResponseEntity.ok().body(newsService.getNews(null, null))));
+    }
+
+    /**
+     * Get one news item by id, or 404 if it is unknown or no longer retained
+     */
+    @GetMapping("/news/{id:\\d+}")
+    public Mono<ResponseEntity<News>> getNews(@PathVariable("id") long id) {
+        return newsService.findNews(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Search recent news by keywords in title and content, best BM25 matches first
      */
-    @GetMapping("/news")
-    public Mono<java.util.List<News>> getAllNews() {
-        return Mono.just(newsService.getAllNews());
+    @GetMapping(value = "/news/search",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<News> searchNews(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (query.isBlank()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must not be blank"));
+        }
+        if (limit <= 0 || limit > maxSearchResults) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + maxSearchResults));
+        }
+        return newsService.searchNews(query, limit);
+    }
+
+    private static boolean acceptsNdjson(ServerHttpRequest request) {
+        return request.getHeaders().getAccept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+    }
+
+    private static boolean acceptsGzip(ServerHttpRequest request) {
+        for (String header : request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip")
+                        && (parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -137,5 +307,7 @@ public class EventController {
         private String content;
         private String category;
         private String author;
+        // MEMORY or FSYNC; the configured default when absent
+        private Durability durability;
     }
 }
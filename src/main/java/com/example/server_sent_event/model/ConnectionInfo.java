@@ -0,0 +1,21 @@
+package com.example.server_sent_event.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConnectionInfo {
+
+    private long id;
+    private String remoteAddress;
+    private Instant connectedAt;
+    private long eventsSent;
+    private long bytesSent;
+    private Instant lastWriteTime;
+    private long bufferDepth;
+}
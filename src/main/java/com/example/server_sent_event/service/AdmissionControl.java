@@ -0,0 +1,176 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a new news stream connection may be opened on this node
+ * New subscribers are shed when the node or the client IP is at its connection cap, or when heap
+ * or CPU usage is above its threshold, so existing connections keep their capacity
+ */
+@Component
+@Slf4j
+public class AdmissionControl {
+
+    /**
+     * Why a connection was refused
+     */
+    public enum Rejection {
+        NODE_LIMIT, CLIENT_LIMIT, OVERLOADED, DRAINING
+    }
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 1_000;
+
+    private final NewsProperties.Admission settings;
+    private final long retryHintMillis;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<String, Integer> perClient = new ConcurrentHashMap<>();
+    private final Map<Rejection, Counter> rejections = new EnumMap<>(Rejection.class);
+    private volatile boolean draining;
+
+    // Resource usage is sampled at most once per interval so the admission check stays cheap
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final AtomicLong lastSampleMillis = new AtomicLong();
+    private volatile double heapUsage;
+    private volatile double cpuLoad;
+
+    public AdmissionControl(NewsProperties properties, MeterRegistry meterRegistry) {
+        this.settings = properties.getAdmission();
+        this.retryHintMillis = properties.getSubscriber().getRetryHint().toMillis();
+        for (Rejection reason : Rejection.values()) {
+            rejections.put(reason, Counter.builder("news.admission.rejected")
+                    .description("News stream connections refused by admission control")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("news.admission.active", active, AtomicInteger::get)
+                .description("News stream connections admitted and still open")
+                .register(meterRegistry);
+        Gauge.builder("news.admission.heap.usage", this, control -> control.heapUsage)
+                .description("Heap usage ratio last seen by the admission governor")
+                .register(meterRegistry);
+        Gauge.builder("news.admission.cpu.load", this, control -> control.cpuLoad)
+                .description("Process CPU load last seen by the admission governor")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Try to admit a connection from the given client address; a granted admission must be released once
+     */
+    public Admission tryAdmit(String clientAddress) {
+        if (draining) {
+            return reject(Rejection.DRAINING);
+        }
+        sampleResources();
+        if (heapUsage > settings.getMaxHeapUsage() || cpuLoad > settings.getMaxCpuLoad()) {
+            return reject(Rejection.OVERLOADED);
+        }
+        if (active.incrementAndGet() > settings.getMaxConnections()) {
+            active.decrementAndGet();
+            return reject(Rejection.NODE_LIMIT);
+        }
+        String client = clientAddress == null ? "unknown" : clientAddress;
+        if (perClient.merge(client, 1, Integer::sum) > settings.getMaxConnectionsPerClient()) {
+            release(client);
+            return reject(Rejection.CLIENT_LIMIT);
+        }
+        return new Admission(null, 0, () -> release(client));
+    }
+
+    /**
+     * Refuse all new connections from now on
+     */
+    public void startDraining() {
+        draining = true;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    private void release(String client) {
+        active.decrementAndGet();
+        perClient.computeIfPresent(client, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    private Admission reject(Rejection reason) {
+        rejections.get(reason).increment();
+        long jitter = settings.getRetryJitter().toMillis();
+        long retryAfter = retryHintMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+        return new Admission(reason, retryAfter, () -> { });
+    }
+
+    private void sampleResources() {
+        long now = System.currentTimeMillis();
+        long last = lastSampleMillis.get();
+        if (now - last < SAMPLE_INTERVAL_MILLIS || !lastSampleMillis.compareAndSet(last, now)) {
+            return;
+        }
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        heapUsage = heap.getMax() > 0 ? (double) heap.getUsed() / heap.getMax() : 0;
+        if (os instanceof com.sun.management.OperatingSystemMXBean sunOs) {
+            cpuLoad = Math.max(0, sunOs.getProcessCpuLoad());
+        }
+    }
+
+    /**
+     * Outcome of an admission check
+     */
+    public static final class Admission {
+
+        private final Rejection rejection;
+        private final long retryAfterMillis;
+        private final Runnable onRelease;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(Rejection rejection, long retryAfterMillis, Runnable onRelease) {
+            this.rejection = rejection;
+            this.retryAfterMillis = retryAfterMillis;
+            this.onRelease = onRelease;
+        }
+
+        public boolean isAdmitted() {
+            return rejection == null;
+        }
+
+        /**
+         * Why the connection was refused, or null if it was admitted
+         */
+        public Rejection getRejection() {
+            return rejection;
+        }
+
+        /**
+         * Jittered delay a refused client should wait before retrying
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        /**
+         * Give the connection slot back; only the first call has an effect
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                onRelease.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.server_sent_event.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every open news stream connection, keyed by connection id
+ * Registration and removal happen exactly once per connection, so size() is always accurate
+ */
+@Component
+public class ConnectionRegistry {
+
+    private final Map<Long, NewsConnection> connections = new ConcurrentHashMap<>();
+    private final AtomicLong idGenerator = new AtomicLong(1);
+
+    long nextId() {
+        return idGenerator.getAndIncrement();
+    }
+
+    void register(NewsConnection connection) {
+        connections.put(connection.getId(), connection);
+    }
+
+    /**
+     * Remove a connection; returns false if it was already removed
+     */
+    boolean unregister(NewsConnection connection) {
+        return connections.remove(connection.getId(), connection);
+    }
+
+    public NewsConnection get(long id) {
+        return connections.get(id);
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * Live view of the open connections
+     */
+    public Collection<NewsConnection> all() {
+        return Collections.unmodifiableCollection(connections.values());
+    }
+}
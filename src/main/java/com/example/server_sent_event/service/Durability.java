@@ -0,0 +1,17 @@
+package com.example.server_sent_event.service;
+
+/**
+ * When a published news item is acknowledged to the caller of addNews()
+ */
+public enum Durability {
+
+    /**
+     * Once it is in the replay history and handed to subscribers; it reaches disk with the next periodic sync
+     */
+    MEMORY,
+
+    /**
+     * Only once it has been synced to disk, together with everything published before it
+     */
+    FSYNC
+}
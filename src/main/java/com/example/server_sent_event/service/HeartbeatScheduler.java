@@ -0,0 +1,99 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeats and dead-connection detection for all news connections on one hashed timer wheel
+ * Each connection has a single pending timeout, due one heartbeat interval after its last write;
+ * when it fires the connection either gets a comment frame (idle), gets reaped (writes stuck for
+ * longer than the write timeout), or is simply rescheduled (it was written to in the meantime)
+ */
+@Component
+@Slf4j
+public class HeartbeatScheduler {
+
+    static final SseFrame HEARTBEAT = SseFrame.comment("heartbeat");
+
+    private final HashedWheelTimer timer;
+    private final long intervalMillis;
+    private final long writeTimeoutMillis;
+    private final Counter heartbeats;
+    private final Counter reaped;
+
+    public HeartbeatScheduler(NewsProperties properties, MeterRegistry meterRegistry) {
+        NewsProperties.Heartbeat settings = properties.getHeartbeat();
+        this.intervalMillis = settings.getInterval().toMillis();
+        this.writeTimeoutMillis = settings.getWriteTimeout().toMillis();
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("news-heartbeat", true),
+                settings.getTick().toMillis(), TimeUnit.MILLISECONDS, 512);
+        this.heartbeats = Counter.builder("news.subscriber.heartbeats")
+                .description("Heartbeat comments sent to idle connections")
+                .register(meterRegistry);
+        this.reaped = Counter.builder("news.subscriber.reaped")
+                .description("Connections closed because writes to them stalled")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start heartbeating a connection
+     */
+    public void watch(NewsConnection connection) {
+        schedule(connection, intervalMillis);
+    }
+
+    /**
+     * Stop heartbeating a connection
+     */
+    public void unwatch(NewsConnection connection) {
+        Timeout timeout = connection.heartbeatTimeout();
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void schedule(NewsConnection connection, long delayMillis) {
+        if (connection.isClosed()) {
+            return;
+        }
+        connection.heartbeatTimeout(timer.newTimeout(timeout -> check(connection), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void check(NewsConnection connection) {
+        if (connection.isClosed()) {
+            return;
+        }
+        long idleMillis = System.currentTimeMillis() - connection.lastActivityMillis();
+        if (connection.pendingWrites() > 0 && idleMillis >= writeTimeoutMillis) {
+            log.info("Reaping subscriber {}: no write progress for {} ms with {} frames pending",
+                    connection.getId(), idleMillis, connection.pendingWrites());
+            reaped.increment();
+            connection.close();
+            return;
+        }
+        if (idleMillis >= intervalMillis) {
+            if (connection.pendingWrites() == 0) {
+                heartbeats.increment();
+                connection.sendControl(HEARTBEAT);
+            }
+            // Come back sooner if a write is stuck, so reaping happens close to the write timeout
+            schedule(connection, Math.min(intervalMillis, writeTimeoutMillis));
+        } else {
+            schedule(connection, intervalMillis - idleMillis);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+}
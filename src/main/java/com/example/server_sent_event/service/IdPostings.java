@@ -0,0 +1,62 @@
+package com.example.server_sent_event.service;
+
+import java.util.Arrays;
+
+/**
+ * Ascending list of news ids sharing one attribute value, as primitive longs
+ * News are appended in id order and evicted oldest first, so ids are only ever added at the
+ * tail and removed from the head; readers find their place by binary search
+ */
+final class IdPostings {
+
+    private long[] ids = new long[8];
+    private int head;
+    private int tail;
+
+    /**
+     * Append an id greater than every id in the list
+     */
+    synchronized void add(long id) {
+        if (tail == ids.length) {
+            int size = tail - head;
+            long[] target = size * 2 > ids.length ? new long[ids.length * 2] : ids;
+            System.arraycopy(ids, head, target, 0, size);
+            ids = target;
+            head = 0;
+            tail = size;
+        }
+        ids[tail++] = id;
+    }
+
+    /**
+     * Remove the id if it is the oldest in the list; returns whether the list is empty afterwards
+     */
+    synchronized boolean removeOldest(long id) {
+        if (head < tail && ids[head] == id) {
+            head++;
+        }
+        if (head == tail) {
+            head = 0;
+            tail = 0;
+            if (ids.length > 8) {
+                ids = new long[8];
+            }
+        }
+        return head == tail;
+    }
+
+    /**
+     * The smallest id greater than the given id, or -1 if there is none
+     */
+    synchronized long next(long after) {
+        int index = Arrays.binarySearch(ids, head, tail, after + 1);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < tail ? ids[index] : -1;
+    }
+
+    synchronized int size() {
+        return tail - head;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The keywords of all keyword subscriptions on the node, matched by one shared automaton
+ * Every published news is scanned once, whatever the number of subscribers; the shards then look
+ * the matched keywords up in their own subscriber postings
+ * The publish path never builds anything: keywords subscribed since the automaton was built wait
+ * in a small pending set that is checked directly, and a merge on a worker thread rebuilds the
+ * automaton with them and swaps it in. Keywords nobody subscribes to any more stay in the
+ * automaton until they make up most of it, as matching one costs nothing but a lookup
+ */
+final class KeywordIndex {
+
+    // Pending keywords that trigger a merge right away instead of after the merge delay
+    private static final int MAX_PENDING = 256;
+
+    private final Scheduler scheduler;
+    private final long mergeDelayMillis;
+
+    // Subscriptions per keyword; add, remove and the end of a merge are serialized on this
+    private final Map<String, Integer> subscriptions = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private volatile KeywordMatcher matcher = KeywordMatcher.EMPTY;
+    private boolean mergeScheduled;
+
+    KeywordIndex() {
+        this(Schedulers.boundedElastic(), Duration.ofSeconds(1));
+    }
+
+    KeywordIndex(Scheduler scheduler, Duration mergeDelay) {
+        this.scheduler = scheduler;
+        this.mergeDelayMillis = mergeDelay.toMillis();
+    }
+
+    /**
+     * Count one more subscription to each keyword; must happen before the subscriber can be matched
+     */
+    synchronized void add(Set<String> keywords) {
+        for (String keyword : keywords) {
+            subscriptions.merge(keyword, 1, Integer::sum);
+            if (!matcher.contains(keyword)) {
+                pending.add(keyword);
+            }
+        }
+        if (!pending.isEmpty()) {
+            scheduleMerge();
+        }
+    }
+
+    synchronized void remove(Set<String> keywords) {
+        for (String keyword : keywords) {
+            subscriptions.computeIfPresent(keyword, (key, count) -> count > 1 ? count - 1 : null);
+        }
+        if (matcher.size() > 2 * subscriptions.size() + 64) {
+            scheduleMerge();
+        }
+    }
+
+    private void scheduleMerge() {
+        if (!mergeScheduled) {
+            mergeScheduled = true;
+            long delay = pending.size() >= MAX_PENDING ? 0 : mergeDelayMillis;
+            scheduler.schedule(this::merge, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rebuild the automaton from the current keywords and swap it in; runs on the scheduler
+     */
+    void merge() {
+        swap(KeywordMatcher.of(keywords()));
+    }
+
+    synchronized Set<String> keywords() {
+        return Set.copyOf(subscriptions.keySet());
+    }
+
+    synchronized void swap(KeywordMatcher rebuilt) {
+        // A keyword that lost its last subscription and was subscribed again after the snapshot is missing from
+        // the rebuilt automaton, yet add did not make it pending as the old one had it: pend it for the next merge
+        for (String keyword : subscriptions.keySet()) {
+            if (!rebuilt.contains(keyword)) {
+                pending.add(keyword);
+            }
+        }
+        // Swapped before the pending keywords it covers are dropped, so a scan always sees them in one of the two
+        matcher = rebuilt;
+        pending.removeIf(keyword -> rebuilt.contains(keyword) || !subscriptions.containsKey(keyword));
+        mergeScheduled = false;
+        if (!pending.isEmpty()) {
+            scheduleMerge();
+        }
+    }
+
+    /**
+     * Subscribed keywords occurring in the title or content of the news
+     */
+    Set<String> match(News news) {
+        if (subscriptions.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> matched = null;
+        if (!pending.isEmpty()) {
+            String title = news.getTitle() == null ? "" : KeywordMatcher.normalize(news.getTitle());
+            String content = news.getContent() == null ? "" : KeywordMatcher.normalize(news.getContent());
+            for (String keyword : pending) {
+                if (title.contains(keyword) || content.contains(keyword)) {
+                    if (matched == null) {
+                        matched = new HashSet<>();
+                    }
+                    matched.add(keyword);
+                }
+            }
+        }
+        // Read after the pending set: a keyword a merge removed from it is in this automaton
+        Set<String> found = matcher.match(news.getTitle(), news.getContent());
+        if (matched == null) {
+            return found;
+        }
+        matched.addAll(found);
+        return matched;
+    }
+
+    /**
+     * Number of distinct keywords with at least one subscription
+     */
+    int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Number of subscribed keywords not yet merged into the automaton
+     */
+    int pendingSize() {
+        return pending.size();
+    }
+}
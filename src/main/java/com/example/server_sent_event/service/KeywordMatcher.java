@@ -0,0 +1,178 @@
+package com.example.server_sent_event.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable Aho-Corasick automaton finding every keyword of a set in a text in one pass
+ * Matching is case-insensitive and on substrings. Each node's transitions are two sorted parallel
+ * arrays searched by binary search, and each node's outputs already include those reachable
+ * through its failure links, so a scan is one transition plus an output check per character
+ */
+final class KeywordMatcher {
+
+    static final KeywordMatcher EMPTY = new KeywordMatcher(List.of());
+
+    private final String[] keywords;
+    private final Set<String> keywordSet;
+
+    // Per node: sorted transition labels and their targets, the failure link and the matched keyword indexes
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] failure;
+    private final int[][] outputs;
+
+    private KeywordMatcher(Collection<String> keywords) {
+        this.keywords = keywords.toArray(new String[0]);
+        this.keywordSet = Set.copyOf(keywords);
+
+        // Build the trie with sorted maps, then freeze it into arrays
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> matches = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        matches.add(new ArrayList<>());
+        for (int k = 0; k < this.keywords.length; k++) {
+            int node = 0;
+            for (char c : this.keywords[k].toCharArray()) {
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(node).put(c, next);
+                    trie.add(new TreeMap<>());
+                    matches.add(new ArrayList<>());
+                }
+                node = next;
+            }
+            matches.get(node).add(k);
+        }
+
+        int nodes = trie.size();
+        this.labels = new char[nodes][];
+        this.targets = new int[nodes][];
+        this.failure = new int[nodes];
+        this.outputs = new int[nodes][];
+        for (int node = 0; node < nodes; node++) {
+            TreeMap<Character, Integer> edges = trie.get(node);
+            labels[node] = new char[edges.size()];
+            targets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                labels[node][i] = edge.getKey();
+                targets[node][i++] = edge.getValue();
+            }
+        }
+
+        // Breadth first, so a node's failure target is complete before the node itself
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputs[0] = toArray(matches.get(0));
+        for (int child : targets[0]) {
+            failure[child] = 0;
+            outputs[child] = toArray(matches.get(child));
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < labels[node].length; i++) {
+                char c = labels[node][i];
+                int child = targets[node][i];
+                int fallback = failure[node];
+                while (fallback != 0 && next(fallback, c) < 0) {
+                    fallback = failure[fallback];
+                }
+                int target = next(fallback, c);
+                failure[child] = target < 0 || target == child ? 0 : target;
+                int[] own = toArray(matches.get(child));
+                int[] inherited = outputs[failure[child]];
+                outputs[child] = inherited.length == 0 ? own : concat(own, inherited);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Automaton over the given keywords, which must already be normalized with normalize(String)
+     */
+    static KeywordMatcher of(Collection<String> keywords) {
+        return keywords.isEmpty() ? EMPTY : new KeywordMatcher(new HashSet<>(keywords));
+    }
+
+    /**
+     * Lower-cases a keyword the same way scanned text is lower-cased, one character at a time
+     */
+    static String normalize(String keyword) {
+        char[] chars = keyword.trim().toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    int size() {
+        return keywords.length;
+    }
+
+    boolean contains(String keyword) {
+        return keywordSet.contains(keyword);
+    }
+
+    /**
+     * Keywords occurring in any of the texts; a keyword never matches across two texts
+     */
+    Set<String> match(String... texts) {
+        if (keywords.length == 0) {
+            return Set.of();
+        }
+        BitSet found = null;
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                int target;
+                while ((target = next(node, c)) < 0 && node != 0) {
+                    node = failure[node];
+                }
+                node = Math.max(target, 0);
+                for (int keyword : outputs[node]) {
+                    if (found == null) {
+                        found = new BitSet(keywords.length);
+                    }
+                    found.set(keyword);
+                }
+            }
+        }
+        if (found == null) {
+            return Set.of();
+        }
+        Set<String> matched = new HashSet<>();
+        for (int keyword = found.nextSetBit(0); keyword >= 0; keyword = found.nextSetBit(keyword + 1)) {
+            matched.add(keywords[keyword]);
+        }
+        return matched;
+    }
+
+    private int next(int node, char c) {
+        int index = Arrays.binarySearch(labels[node], c);
+        return index < 0 ? -1 : targets[node][index];
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
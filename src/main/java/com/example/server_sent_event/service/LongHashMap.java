@@ -0,0 +1,165 @@
+package com.example.server_sent_event.service;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash map from positive long keys to values, without boxing
+ * Linear probing with backward-shift deletion, so there are no tombstones and a probe ends at the
+ * first empty slot. Writes take a lock and are meant for a single writer; reads are optimistic,
+ * validated afterwards and retried under the read lock only if they raced a write, so a lookup
+ * allocates nothing and normally takes no lock
+ */
+final class LongHashMap<V> {
+
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Keys and values are swapped together on resize, so a reader always sees arrays of equal length
+    private Table table;
+    private int size;
+
+    LongHashMap() {
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Value for the given key, or null
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        Object value = find(table, key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = find(table, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return (V) value;
+    }
+
+    private static Object find(Table table, long key) {
+        long[] keys = table.keys;
+        int mask = keys.length - 1;
+        // Bounded by the capacity, as a torn optimistic read may see a table without empty slots
+        for (int i = slot(key, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long k = keys[i];
+            if (k == key) {
+                return table.values[i];
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Map the key, which must be positive, to a non-null value
+     */
+    void put(long key, V value) {
+        if (key <= EMPTY || value == null) {
+            throw new IllegalArgumentException("Invalid entry " + key + "=" + value);
+        }
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2L > table.keys.length) {
+                resize(table.keys.length * 2);
+            }
+            long[] keys = table.keys;
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == EMPTY) {
+                size++;
+            }
+            keys[i] = key;
+            table.values[i] = value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Unmap the key; returns whether it was present
+     */
+    boolean remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            // Shift later entries of the probe sequence back into the hole
+            int hole = i;
+            for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            keys[hole] = EMPTY;
+            values[hole] = null;
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void resize(int capacity) {
+        Table old = table;
+        Table resized = new Table(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.keys.length; i++) {
+            long key = old.keys[i];
+            if (key != EMPTY) {
+                int j = slot(key, mask);
+                while (resized.keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                resized.keys[j] = key;
+                resized.values[j] = old.values[i];
+            }
+        }
+        table = resized;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+}
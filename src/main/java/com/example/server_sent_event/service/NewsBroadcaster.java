@@ -0,0 +1,186 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans published frames out to the bounded buffers of the subscribers whose filter matches
+ * Subscribers are partitioned across shards; each shard has its own sink drained on its own
+ * thread, so one publish is fanned out to all shards in parallel
+ * Keyword subscriptions of all shards share one automaton, scanned once per publish
+ */
+@Component
+@Slf4j
+public class NewsBroadcaster {
+
+    // How long shutdown waits for the shards to complete their subscribers
+    private static final Duration COMPLETION_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ConnectionRegistry registry;
+    private final Shard[] shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final NewsProperties.Subscriber settings;
+    private final Counter droppedCounter;
+    private final Counter disconnectedCounter;
+    private final KeywordIndex keywords = new KeywordIndex();
+
+    // Completion of the subscribers started by the last completeAll(), awaited on shutdown
+    private volatile Mono<Void> completion = Mono.empty();
+
+    public NewsBroadcaster(NewsProperties properties, MeterRegistry meterRegistry, ConnectionRegistry registry) {
+        this.registry = registry;
+        this.settings = properties.getSubscriber();
+        this.droppedCounter = overflowCounter(meterRegistry, "dropped");
+        this.disconnectedCounter = overflowCounter(meterRegistry, "disconnected");
+
+        int shardCount = properties.getFanout().getShards();
+        if (shardCount <= 0) {
+            shardCount = Runtime.getRuntime().availableProcessors();
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        log.info("News fan-out running on {} shards", shardCount);
+    }
+
+    /**
+     * Overflows of subscriber buffers by the action taken: frames dropped, or subscribers disconnected
+     */
+    private Counter overflowCounter(MeterRegistry meterRegistry, String action) {
+        return Counter.builder("news.subscriber.overflow")
+                .description("Full subscriber buffers, by the action taken")
+                .tag("policy", settings.getOverflowPolicy().tag())
+                .tag("action", action)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Register a new subscriber on the next shard; it buffers published frames until its stream is subscribed
+     */
+    public NewsConnection connect(NewsFilter filter, String remoteAddress) {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shards.length);
+        NewsConnection connection = new NewsConnection(registry.nextId(), remoteAddress, shard, filter,
+                settings.getOverflowPolicy(), settings.getBufferSize(), settings.getRetryHint().toMillis(),
+                droppedCounter, disconnectedCounter);
+        registry.register(connection);
+        keywords.add(filter.keywords());
+        shards[shard].add(connection);
+        return connection;
+    }
+
+    /**
+     * Stop delivering to a subscriber; returns false if it was already disconnected
+     */
+    public boolean disconnect(NewsConnection connection) {
+        if (!registry.unregister(connection)) {
+            return false;
+        }
+        shards[connection.shard()].remove(connection);
+        keywords.remove(connection.filter().keywords());
+        return true;
+    }
+
+    /**
+     * Hand a frame to every shard; each shard delivers it to its matching subscribers on its own thread
+     * Must only be called by one thread at a time, as each shard sink has a single producer
+     */
+    public void publish(SseFrame frame) {
+        Delivery delivery = new Delivery(frame, keywords.match(frame.getNews()));
+        for (Shard shard : shards) {
+            shard.sink.tryEmitNext(delivery);
+        }
+    }
+
+    /**
+     * Complete every subscriber stream, on the thread of the shard that owns it
+     * Starts right away; the returned Mono completes once every shard is done
+     */
+    public Mono<Void> completeAll() {
+        Mono<Void> done = Flux.fromArray(shards)
+                .flatMap(shard -> Mono.fromRunnable(shard::completeAll).subscribeOn(shard.scheduler))
+                .then()
+                .cache();
+        done.subscribe(null, error -> log.error("Failed to complete subscribers: {}", error.getMessage(), error));
+        completion = done;
+        return done;
+    }
+
+    /**
+     * Wait for subscribers being completed, then stop the shard threads
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            completion.block(COMPLETION_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("Subscribers not completed before shutdown: {}", e.getMessage());
+        }
+        for (Shard shard : shards) {
+            shard.dispose();
+        }
+    }
+
+    /**
+     * A published frame with the subscribed keywords found in its news
+     */
+    private record Delivery(SseFrame frame, Set<String> keywords) {
+    }
+
+    private static final class Shard {
+
+        private final Set<NewsConnection> connections = ConcurrentHashMap.newKeySet();
+        private final SubscriptionIndex index = new SubscriptionIndex();
+        private final Sinks.Many<Delivery> sink = Sinks.many().unicast().onBackpressureBuffer();
+        private final Scheduler scheduler;
+        private final Disposable drain;
+
+        Shard(int id) {
+            this.scheduler = Schedulers.newSingle("news-shard-" + id, true);
+            // Subscriber buffers of this shard are only ever written from this shard's thread
+            this.drain = sink.asFlux()
+                    .publishOn(scheduler)
+                    .subscribe(this::deliver, error -> log.error("News shard {} failed: {}", id, error.getMessage(), error));
+        }
+
+        void add(NewsConnection connection) {
+            connections.add(connection);
+            index.add(connection);
+        }
+
+        void remove(NewsConnection connection) {
+            if (connections.remove(connection)) {
+                index.remove(connection);
+            }
+        }
+
+        private void deliver(Delivery delivery) {
+            SseFrame frame = delivery.frame();
+            index.forEachMatch(frame.getNews(), delivery.keywords(), connection -> connection.offer(frame));
+        }
+
+        private void completeAll() {
+            connections.forEach(NewsConnection::complete);
+        }
+
+        void dispose() {
+            drain.dispose();
+            scheduler.dispose();
+        }
+    }
+}
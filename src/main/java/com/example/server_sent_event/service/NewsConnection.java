@@ -0,0 +1,270 @@
+package com.example.server_sent_event.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.netty.util.Timeout;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One subscriber of the live news stream with its own bounded buffer
+ * A stalled client only fills its own buffer; the slow consumer policy decides what gives
+ * Heartbeats and retry hints travel on a separate control channel merged into the output
+ * Statistics are plain volatile fields, each written by a single thread, so updating them on
+ * the hot path costs no more than an ordinary field write
+ */
+public class NewsConnection {
+
+    private static final Duration CONTROL_EMIT_TIMEOUT = Duration.ofMillis(100);
+
+    private final long id;
+    private final String remoteAddress;
+    private final Instant connectedAt = Instant.now();
+    private final int shard;
+    private final NewsFilter filter;
+    private final SlowConsumerPolicy policy;
+    private final int bufferSize;
+    private final long retryHintMillis;
+    private final Counter droppedCounter;
+    private final Counter disconnectedCounter;
+
+    // Only written by the owning shard's thread; buffers up to bufferSize frames until the live part
+    // of the stream is subscribed, and is emptied if it overflows before, as history still holds them
+    private final Queue<SseFrame> queued;
+    private final Sinks.Many<SseFrame> sink;
+
+    // Guarded by this: whether the live part is subscribed, and whether queued frames were discarded
+    private boolean live;
+    private boolean behind;
+
+    // Heartbeats and retry hints, written from timer and shutdown threads; merged into the output
+    private final Sinks.Many<SseFrame> control = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger controlPending = new AtomicInteger();
+    private final Sinks.Empty<Void> closed = Sinks.empty();
+    private volatile boolean closing;
+    private volatile Timeout heartbeatTimeout;
+
+    // Written by the owning shard's thread
+    private volatile long offered;
+    private volatile long dropped;
+
+    // Written by whichever thread is currently delivering to the client; signals are serialized
+    private volatile long delivered;
+    private volatile long eventsSent;
+    private volatile long bytesSent;
+    private volatile long lastWriteMillis;
+
+    NewsConnection(long id, String remoteAddress, int shard, NewsFilter filter, SlowConsumerPolicy policy,
+                   int bufferSize, long retryHintMillis, Counter droppedCounter, Counter disconnectedCounter) {
+        this.id = id;
+        this.remoteAddress = remoteAddress;
+        this.shard = shard;
+        this.filter = filter;
+        this.policy = policy;
+        this.bufferSize = bufferSize;
+        this.retryHintMillis = retryHintMillis;
+        this.droppedCounter = droppedCounter;
+        this.disconnectedCounter = disconnectedCounter;
+        this.queued = Queues.<SseFrame>get(bufferSize).get();
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(queued);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public Instant getConnectedAt() {
+        return connectedAt;
+    }
+
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Time of the last frame handed to the client, or null if nothing was sent yet
+     */
+    public Instant getLastWriteTime() {
+        long millis = lastWriteMillis;
+        return millis == 0 ? null : Instant.ofEpochMilli(millis);
+    }
+
+    /**
+     * Live frames offered to this subscriber that it has not consumed yet
+     */
+    public long getBufferDepth() {
+        return Math.max(0, offered - dropped - delivered);
+    }
+
+    int shard() {
+        return shard;
+    }
+
+    NewsFilter filter() {
+        return filter;
+    }
+
+    /**
+     * Hand a frame to this subscriber without blocking the publisher
+     */
+    void offer(SseFrame frame) {
+        offered++;
+        if (sink.tryEmitNext(frame) == Sinks.EmitResult.FAIL_OVERFLOW) {
+            if (discardQueued()) {
+                sink.tryEmitNext(frame);
+            } else {
+                // Overflowed in the moment between going live and subscribing
+                dropped++;
+            }
+        }
+    }
+
+    /**
+     * Empty the full buffer of a subscriber still replaying, so that it catches up from history
+     * instead; false once the live part is subscribed, when only the slow consumer policy applies
+     */
+    private synchronized boolean discardQueued() {
+        if (live) {
+            return false;
+        }
+        dropped += queued.size();
+        queued.clear();
+        behind = true;
+        return true;
+    }
+
+    /**
+     * Called once the replay is done: true if the live part can be subscribed, false if frames
+     * were discarded meanwhile and the replay has to continue from the last id sent first
+     */
+    synchronized boolean goLive() {
+        if (behind) {
+            behind = false;
+            return false;
+        }
+        live = true;
+        return true;
+    }
+
+    /**
+     * Account for a frame handed to the client, either replayed or live
+     */
+    private void recordWrite(SseFrame frame) {
+        eventsSent += frame.count();
+        bytesSent += frame.size();
+        lastWriteMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Time of the last write, or of the connect if nothing was written yet
+     */
+    long lastActivityMillis() {
+        long millis = lastWriteMillis;
+        return millis == 0 ? connectedAt.toEpochMilli() : millis;
+    }
+
+    /**
+     * Frames handed to this connection, live or control, that the client has not consumed yet
+     */
+    long pendingWrites() {
+        return getBufferDepth() + controlPending.get();
+    }
+
+    /**
+     * Send a control frame (heartbeat, retry hint) ahead of any buffered news
+     */
+    void sendControl(SseFrame frame) {
+        controlPending.incrementAndGet();
+        control.emitNext(frame, Sinks.EmitFailureHandler.busyLooping(CONTROL_EMIT_TIMEOUT));
+    }
+
+    /**
+     * Close the connection once the control frames already sent have been written
+     */
+    void close() {
+        closing = true;
+        closed.tryEmitEmpty();
+    }
+
+    boolean isClosed() {
+        return closing;
+    }
+
+    Timeout heartbeatTimeout() {
+        return heartbeatTimeout;
+    }
+
+    void heartbeatTimeout(Timeout timeout) {
+        this.heartbeatTimeout = timeout;
+    }
+
+    /**
+     * Everything written to the client: the given news frames (replay then live) merged with control frames
+     * Completes once the news frames complete or the connection is closed and pending control frames are written
+     */
+    Flux<SseFrame> output(Flux<SseFrame> news) {
+        Flux<SseFrame> controlFrames = control.asFlux().doOnNext(frame -> controlPending.decrementAndGet());
+        return Flux.merge(
+                        news.takeUntilOther(closed.asMono())
+                                .doFinally(signal -> {
+                                    closing = true;
+                                    control.emitComplete(Sinks.EmitFailureHandler.busyLooping(CONTROL_EMIT_TIMEOUT));
+                                }),
+                        controlFrames)
+                .doOnNext(this::recordWrite);
+    }
+
+    /**
+     * Count the action taken on a full buffer: a frame dropped, or under DISCONNECT the subscriber
+     * disconnected, whose client resumes from its Last-Event-ID and so loses nothing
+     */
+    private void onOverflow(SseFrame frame) {
+        dropped++;
+        if (policy == SlowConsumerPolicy.DISCONNECT) {
+            disconnectedCounter.increment();
+        } else {
+            droppedCounter.increment();
+        }
+    }
+
+    /**
+     * End the stream, e.g. on shutdown
+     */
+    void complete() {
+        sink.tryEmitComplete();
+    }
+
+    /**
+     * Live frames for this subscriber, bounded according to the slow consumer policy
+     */
+    Flux<SseFrame> frames() {
+        Flux<SseFrame> live = sink.asFlux();
+        Flux<SseFrame> bounded = switch (policy) {
+            case DROP_OLDEST -> live.onBackpressureBuffer(bufferSize, this::onOverflow,
+                    BufferOverflowStrategy.DROP_OLDEST);
+            case DROP_NEWEST -> live.onBackpressureBuffer(bufferSize, this::onOverflow,
+                    BufferOverflowStrategy.DROP_LATEST);
+            case COALESCE -> live.onBackpressureBuffer(1, this::onOverflow,
+                    BufferOverflowStrategy.DROP_OLDEST);
+            case DISCONNECT -> live.onBackpressureBuffer(bufferSize, this::onOverflow,
+                            BufferOverflowStrategy.ERROR)
+                    .onErrorResume(Exceptions::isOverflow, overflow -> Flux.just(SseFrame.retry(retryHintMillis)));
+        };
+        return bounded.doOnNext(frame -> delivered++);
+    }
+}
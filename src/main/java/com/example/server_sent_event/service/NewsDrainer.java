@@ -0,0 +1,106 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains news stream connections on shutdown instead of dropping them all at once
+ * Stops before the web server (highest phase), refuses new subscribers, then closes the open
+ * connections in batches spread over the drain window, each with its own random retry: hint
+ * within the window, so clients reconnect to other nodes as a ramp rather than a spike
+ */
+@Component
+@Slf4j
+public class NewsDrainer implements SmartLifecycle {
+
+    private final ConnectionRegistry registry;
+    private final AdmissionControl admissionControl;
+    private final NewsProperties.Drain settings;
+    private final Scheduler scheduler = Schedulers.newSingle("news-drain", true);
+    private volatile boolean running;
+
+    public NewsDrainer(ConnectionRegistry registry, AdmissionControl admissionControl, NewsProperties properties) {
+        this.registry = registry;
+        this.admissionControl = admissionControl;
+        this.settings = properties.getDrain();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void stop() {
+        CountDownLatch drained = new CountDownLatch(1);
+        stop(drained::countDown);
+        try {
+            drained.await(settings.getWindow().toMillis() + 1_000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        admissionControl.startDraining();
+        List<NewsConnection> connections = new ArrayList<>(registry.all());
+        Collections.shuffle(connections);
+        long windowMillis = settings.getWindow().toMillis();
+        int batchSize = Math.max(1, settings.getBatchSize());
+        int batches = (connections.size() + batchSize - 1) / batchSize;
+        log.info("Draining {} news connections in {} batches over {} ms", connections.size(), batches, windowMillis);
+
+        if (batches == 0) {
+            finish(callback);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(batches);
+        for (int batch = 0; batch < batches; batch++) {
+            List<NewsConnection> slice = connections.subList(batch * batchSize,
+                    Math.min(connections.size(), (batch + 1) * batchSize));
+            long delayMillis = windowMillis * batch / batches;
+            scheduler.schedule(() -> {
+                slice.forEach(connection -> close(connection, windowMillis));
+                if (remaining.decrementAndGet() == 0) {
+                    finish(callback);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void close(NewsConnection connection, long windowMillis) {
+        long retryMillis = windowMillis > 0 ? ThreadLocalRandom.current().nextLong(windowMillis) : 0;
+        connection.sendControl(SseFrame.retry(retryMillis));
+        connection.close();
+    }
+
+    private void finish(Runnable callback) {
+        running = false;
+        log.info("News connections drained");
+        scheduler.dispose();
+        callback.run();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side subscription filter on news category, author and keywords
+ * Values are matched case-insensitively; an empty set means "any"
+ * Keywords match anywhere in the title or content, and any one of them is enough
+ */
+public final class NewsFilter {
+
+    public static final NewsFilter NONE = new NewsFilter(Set.of(), Set.of(), Set.of());
+
+    private final Set<String> categories;
+    private final Set<String> authors;
+    private final Set<String> keywords;
+
+    private NewsFilter(Set<String> categories, Set<String> authors, Set<String> keywords) {
+        this.categories = categories;
+        this.authors = authors;
+        this.keywords = keywords;
+    }
+
+    /**
+     * Build a filter from request parameter values; null or blank values are ignored
+     */
+    public static NewsFilter of(Collection<String> categories, Collection<String> authors) {
+        return of(categories, authors, null);
+    }
+
+    /**
+     * Same as of(Collection, Collection), also restricted to news containing one of the keywords
+     */
+    public static NewsFilter of(Collection<String> categories, Collection<String> authors, Collection<String> keywords) {
+        Set<String> categoryKeys = normalize(categories, NewsFilter::key);
+        Set<String> authorKeys = normalize(authors, NewsFilter::key);
+        Set<String> keywordKeys = normalize(keywords, KeywordMatcher::normalize);
+        return categoryKeys.isEmpty() && authorKeys.isEmpty() && keywordKeys.isEmpty()
+                ? NONE : new NewsFilter(categoryKeys, authorKeys, keywordKeys);
+    }
+
+    private static Set<String> normalize(Collection<String> values, UnaryOperator<String> key) {
+        if (values == null) {
+            return Set.of();
+        }
+        return values.stream()
+                .filter(value -> value != null && !value.isBlank())
+                .map(key)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Index key for an attribute value
+     */
+    static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    Set<String> categories() {
+        return categories;
+    }
+
+    Set<String> authors() {
+        return authors;
+    }
+
+    Set<String> keywords() {
+        return keywords;
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    boolean matchesCategory(News news) {
+        return categories.isEmpty() || categories.contains(key(news.getCategory()));
+    }
+
+    boolean matchesAuthor(News news) {
+        return authors.isEmpty() || authors.contains(key(news.getAuthor()));
+    }
+
+    boolean matchesKeywords(News news) {
+        if (keywords.isEmpty()) {
+            return true;
+        }
+        String title = news.getTitle() == null ? "" : KeywordMatcher.normalize(news.getTitle());
+        String content = news.getContent() == null ? "" : KeywordMatcher.normalize(news.getContent());
+        for (String keyword : keywords) {
+            if (title.contains(keyword) || content.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matches(News news) {
+        return matchesCategory(news) && matchesAuthor(news) && matchesKeywords(news);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NewsFilter that && categories.equals(that.categories) && authors.equals(that.authors)
+                && keywords.equals(that.keywords);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * categories.hashCode() + authors.hashCode()) + keywords.hashCode();
+    }
+}
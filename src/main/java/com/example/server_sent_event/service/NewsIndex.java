@@ -0,0 +1,183 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the in-memory history: category and author postings and publish-time buckets
+ * Maintained incrementally on the news log's writer thread as news is appended and evicted;
+ * queries run concurrently, walk the ids in increasing order and read the news from the log by id
+ */
+final class NewsIndex implements NewsLog.Listener {
+
+    private final NewsLog log;
+
+    // Normalized attribute value to the ids of the retained news carrying it
+    private final Map<String, IdPostings> categories = new ConcurrentHashMap<>();
+    private final Map<String, IdPostings> authors = new ConcurrentHashMap<>();
+
+    // Minute of publication to the first id published in it; news is published in id order, so
+    // the minutes only grow with the ids (a clock stepping back files news under the later minute)
+    private final ConcurrentSkipListMap<Long, Long> minutes = new ConcurrentSkipListMap<>();
+    private long lastMinute = Long.MIN_VALUE;
+
+    NewsIndex(NewsLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void appended(SseFrame frame) {
+        News news = frame.getNews();
+        long id = frame.getId();
+        categories.computeIfAbsent(NewsFilter.key(news.getCategory()), key -> new IdPostings()).add(id);
+        authors.computeIfAbsent(NewsFilter.key(news.getAuthor()), key -> new IdPostings()).add(id);
+        long minute = news.getPublishedTime() == null ? lastMinute : minute(news.getPublishedTime());
+        if (minute > lastMinute) {
+            lastMinute = minute;
+            minutes.put(minute, id);
+        }
+    }
+
+    @Override
+    public void evicted(SseFrame frame) {
+        News news = frame.getNews();
+        long id = frame.getId();
+        evict(categories, NewsFilter.key(news.getCategory()), id);
+        evict(authors, NewsFilter.key(news.getAuthor()), id);
+        // Drop the oldest minute once every id in it is gone, that is once the next minute starts right after
+        while (true) {
+            Map.Entry<Long, Long> oldest = minutes.firstEntry();
+            Map.Entry<Long, Long> next = oldest == null ? null : minutes.higherEntry(oldest.getKey());
+            if (next == null || next.getValue() > id + 1) {
+                return;
+            }
+            minutes.remove(oldest.getKey());
+        }
+    }
+
+    private static void evict(Map<String, IdPostings> index, String key, long id) {
+        IdPostings postings = index.get(key);
+        if (postings != null && postings.removeOldest(id)) {
+            index.remove(key, postings);
+        }
+    }
+
+    /**
+     * Retained news after the given id matching the filter and published within [from, to], in id order
+     * The driving ids come from the postings of the filter's categories, else of its authors, else
+     * the whole log, narrowed to the id range of the time window; the rest is checked per news
+     */
+    Iterable<SseFrame> query(NewsFilter filter, LocalDateTime from, LocalDateTime to, long afterId) {
+        long start = Math.max(afterId, firstIdFrom(from) - 1);
+        long end = endIdBefore(to);
+        IdSource source = filter.categories().isEmpty()
+                ? filter.authors().isEmpty() ? this::nextInLog : postings(authors, filter.authors())
+                : postings(categories, filter.categories());
+
+        return () -> new Iterator<>() {
+            private long last = start;
+            private SseFrame current;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null) {
+                    long id = source.next(last);
+                    if (id < 0 || id >= end) {
+                        return false;
+                    }
+                    last = id;
+                    SseFrame frame = log.find(id);
+                    if (frame != null && matches(frame.getNews(), filter, from, to)) {
+                        current = frame;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public SseFrame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                SseFrame result = current;
+                current = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Whether the news matches the filter and was published within [from, to], either bound being optional
+     */
+    static boolean matches(News news, NewsFilter filter, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime published = news.getPublishedTime();
+        return filter.matches(news)
+                && (from == null || (published != null && !published.isBefore(from)))
+                && (to == null || (published != null && !published.isAfter(to)));
+    }
+
+    /**
+     * Lowest id that may have been published at or after the given time
+     */
+    private long firstIdFrom(LocalDateTime from) {
+        Map.Entry<Long, Long> bucket = from == null ? null : minutes.floorEntry(minute(from));
+        return bucket == null ? 0 : bucket.getValue();
+    }
+
+    /**
+     * Id above every news that may have been published at or before the given time
+     */
+    private long endIdBefore(LocalDateTime to) {
+        Map.Entry<Long, Long> bucket = to == null ? null : minutes.higherEntry(minute(to));
+        return bucket == null ? Long.MAX_VALUE : bucket.getValue();
+    }
+
+    private long nextInLog(long after) {
+        SseFrame frame = log.get(log.sequenceAfter(after));
+        return frame == null ? -1 : frame.getId();
+    }
+
+    /**
+     * Union of the postings of the given values, as one ascending id source
+     */
+    private static IdSource postings(Map<String, IdPostings> index, Set<String> keys) {
+        List<IdPostings> lists = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            IdPostings postings = index.get(key);
+            if (postings != null) {
+                lists.add(postings);
+            }
+        }
+        return after -> {
+            long next = -1;
+            for (IdPostings postings : lists) {
+                long id = postings.next(after);
+                if (id >= 0 && (next < 0 || id < next)) {
+                    next = id;
+                }
+            }
+            return next;
+        };
+    }
+
+    private static long minute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * Ascending ids: the smallest id greater than the given one, or -1 at the end
+     */
+    private interface IdSource {
+        long next(long after);
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.server_sent_event.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded ring-buffer history of encoded news frames with a single writer and lock-free readers
+ * Every appended item gets a sequence number; the window [head, tail) is retained and older
+ * items are evicted by count, by retained bytes or by age, whichever limit is hit first
+ * Retained items are also indexed by news id, and leave the index when they are evicted
+ */
+public class NewsLog {
+
+    /**
+     * Why an item left the retained window
+     */
+    public enum EvictionReason {
+        COUNT, BYTES, AGE
+    }
+
+    /**
+     * Told about every item entering and leaving the retained window, on the writer thread
+     */
+    public interface Listener {
+        void appended(SseFrame frame);
+
+        void evicted(SseFrame frame);
+    }
+
+    private final int maxItems;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    // Oldest retained sequence; advanced by the writer before a slot can be reused
+    private volatile long head;
+
+    // Next sequence to be written; a write to this field publishes the appended item to readers
+    private volatile long tail;
+
+    // News id to frame for the retained window, maintained by the writer alongside the ring
+    private final LongHashMap<SseFrame> byId = new LongHashMap<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long retainedBytes;
+    private final AtomicLongArray evictions = new AtomicLongArray(EvictionReason.values().length);
+
+    public NewsLog(int maxItems, long maxBytes, long maxAgeMillis) {
+        this(maxItems, maxBytes, maxAgeMillis, System::currentTimeMillis);
+    }
+
+    public NewsLog(int maxItems, long maxBytes, long maxAgeMillis, LongSupplier clock) {
+        if (maxItems <= 0) {
+            throw new IllegalArgumentException("maxItems must be positive: " + maxItems);
+        }
+        this.maxItems = maxItems;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        int capacity = Integer.highestOneBit(Math.max(1, maxItems - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Append a news frame accounting for the given retained size, evicting older items as needed
+     * Must only be called by one thread at a time
+     */
+    public void append(SseFrame frame, long bytes) {
+        long now = clock.getAsLong();
+        evictExpired(now);
+        while (tail - head >= maxItems) {
+            evictHead(EvictionReason.COUNT);
+        }
+        while (tail > head && retainedBytes + bytes > maxBytes) {
+            evictHead(EvictionReason.BYTES);
+        }
+        long sequence = tail;
+        slots.set((int) (sequence & mask), new Entry(sequence, frame, bytes, now));
+        byId.put(frame.getId(), frame);
+        retainedBytes += bytes;
+        tail = sequence + 1;
+        for (Listener listener : listeners) {
+            listener.appended(frame);
+        }
+    }
+
+    /**
+     * Keep the listener informed of appends and evictions from now on
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Evict items older than the configured maximum age
+     * Must only be called by the writer thread
+     */
+    public void evictExpired() {
+        evictExpired(clock.getAsLong());
+    }
+
+    private void evictExpired(long now) {
+        while (tail > head) {
+            Entry oldest = slots.get((int) (head & mask));
+            if (now - oldest.appendedAt <= maxAgeMillis) {
+                return;
+            }
+            evictHead(EvictionReason.AGE);
+        }
+    }
+
+    private void evictHead(EvictionReason reason) {
+        long sequence = head;
+        Entry evicted = slots.get((int) (sequence & mask));
+        head = sequence + 1;
+        byId.remove(evicted.frame.getId());
+        retainedBytes -= evicted.bytes;
+        evictions.incrementAndGet(reason.ordinal());
+        for (Listener listener : listeners) {
+            listener.evicted(evicted.frame);
+        }
+    }
+
+    /**
+     * Number of retained items
+     */
+    public int size() {
+        long t = tail;
+        return (int) (t - Math.min(head, t));
+    }
+
+    /**
+     * Bytes accounted for by the retained items
+     */
+    public long retainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Number of items evicted so far for the given reason
+     */
+    public long evictions(EvictionReason reason) {
+        return evictions.get(reason.ordinal());
+    }
+
+    /**
+     * Get the item with the given sequence, or null if it has been evicted or not yet published
+     */
+    public SseFrame get(long sequence) {
+        if (sequence >= tail) {
+            return null;
+        }
+        Entry entry = slots.get((int) (sequence & mask));
+        return entry != null && entry.sequence == sequence ? entry.frame : null;
+    }
+
+    /**
+     * Get the retained frame of the news with the given id, or null; allocates nothing
+     */
+    public SseFrame find(long id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Id of the oldest retained news, or -1 if nothing is retained
+     */
+    public long firstId() {
+        long sequence = head;
+        while (sequence < tail) {
+            SseFrame frame = get(sequence);
+            if (frame != null) {
+                return frame.getId();
+            }
+            // Evicted under our feet
+            sequence = Math.max(sequence + 1, head);
+        }
+        return -1;
+    }
+
+    /**
+     * Find the sequence of the first retained news with an id greater than the given id
+     * Ids are appended in increasing order, so the retained window is binary searched
+     */
+    public long sequenceAfter(long id) {
+        long low = head;
+        long high = tail;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            SseFrame frame = get(mid);
+            if (frame == null || frame.getId() <= id) {
+                // An item evicted under our feet is older than anything still retained
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Items from the given sequence up to the tail at the time of the call
+     * Iteration takes no locks, copies nothing and skips items evicted while iterating
+     */
+    public Iterable<SseFrame> from(long fromSequence) {
+        long end = tail;
+        return () -> new Iterator<>() {
+            private long next = fromSequence;
+            private SseFrame current;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null && next < end) {
+                    next = Math.max(next, head);
+                    if (next < end) {
+                        current = get(next++);
+                    }
+                }
+                return current != null;
+            }
+
+            @Override
+            public SseFrame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                SseFrame result = current;
+                current = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Items with an id greater than the given id, or the whole retained window for a null id
+     */
+    public Iterable<SseFrame> after(Long id) {
+        return from(id == null ? head : sequenceAfter(id));
+    }
+
+    /**
+     * Copy of all retained items
+     */
+    public List<SseFrame> snapshot() {
+        List<SseFrame> copy = new ArrayList<>(size());
+        from(head).forEach(copy::add);
+        return copy;
+    }
+
+    private static final class Entry {
+        final long sequence;
+        final SseFrame frame;
+        final long bytes;
+        final long appendedAt;
+
+        Entry(long sequence, SseFrame frame, long bytes, long appendedAt) {
+            this.sequence = sequence;
+            this.frame = frame;
+            this.bytes = bytes;
+            this.appendedAt = appendedAt;
+        }
+    }
+}
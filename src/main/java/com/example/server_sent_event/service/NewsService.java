@@ -1,67 +1,211 @@
 package com.example.server_sent_event.service;
 
+import com.example.server_sent_event.config.NewsProperties;
 import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
 public class NewsService {
 
-    private final List<News> newsList = new ArrayList<>();
+    // How long shutdown waits for the news queued before it to be published
+    private static final Duration PUBLISHER_SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+    private final NewsProperties properties;
+
+    // Bounded replay history; the publisher thread is the single writer, readers iterate it without locks
+    private final NewsLog newsLog;
     private final AtomicLong idGenerator = new AtomicLong(1);
-    private final AtomicInteger subscriberCount = new AtomicInteger(0);
 
-    // Use Sinks.Many for multicasting news to all subscribers
-    private final Sinks.Many<News> newsSink = Sinks.many().multicast().onBackpressureBuffer();
+    // Category, author and publish-time indexes over the replay history, kept up to date by its writer
+    private final NewsIndex newsIndex;
+
+    // Full-text index over the titles and contents of the replay history
+    private final SearchIndex searchIndex;
+
+    // Id of the last news appended, the monotonic version of the history; set only by the publisher thread
+    private volatile long lastAppendedId;
+
+    // GET /news body for the current version, encoded once on first request after a publish; epoch tells restarts apart
+    private final AtomicReference<SnapshotBuild> snapshot = new AtomicReference<>();
+    private final String snapshotEpoch = Long.toHexString(System.currentTimeMillis());
+
+    private final SseFrameEncoder frameEncoder;
+
+    // Durable history on disk; outlives restarts and the in-memory window
+    private final NewsStore store;
+
+    // Delivers encoded news frames to every subscriber through its own bounded buffer
+    private final NewsBroadcaster broadcaster;
+
+    // Open subscriber connections; the single source of truth for the subscriber count
+    private final ConnectionRegistry registry;
 
-    // Sink for broadcasting subscriber count updates
-    private final Sinks.Many<Integer> countSink = Sinks.many().multicast().onBackpressureBuffer();
+    // Idle heartbeats and stalled-write reaping on one shared timer wheel
+    private final HeartbeatScheduler heartbeats;
+
+    // Paced history replay, shared by subscribers reconnecting from the same or nearby ids
+    private final ReplayCohorts replayCohorts;
+
+    // Subscriber count sampled at a fixed rate, emitted only on change and shared by all count listeners
+    private final Flux<Integer> subscriberCounts;
+
+    // Multi-producer ingestion: request threads enqueue, one publisher thread drains in order
+    private final Queue<PendingNews> pendingNews = Queues.<PendingNews>unboundedMultiproducer().get();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger drainWip = new AtomicInteger();
+    private final Scheduler publisher = Schedulers.newSingle("news-publisher", true);
+    private final Timer publishLatency;
+    private volatile boolean evictionRequested;
+
+    // Set on shutdown: closed refuses new news, publisherStopped once the publisher thread has exited
+    private volatile boolean closed;
+    private volatile boolean publisherStopped;
+
+    // Periodic age-based eviction, so stale news leave the window even when nothing is published
+    private Disposable evictionTask;
+
+    public NewsService(NewsProperties properties, MeterRegistry meterRegistry, SseFrameEncoder frameEncoder,
+                       NewsBroadcaster broadcaster, ConnectionRegistry registry, HeartbeatScheduler heartbeats,
+                       ReplayPacer replayPacer, NewsStore store) {
+        this.properties = properties;
+        this.frameEncoder = frameEncoder;
+        this.store = store;
+        this.broadcaster = broadcaster;
+        this.registry = registry;
+        this.heartbeats = heartbeats;
+        this.subscriberCounts = Flux.interval(Duration.ZERO, properties.getSubscriber().getCountInterval())
+                .onBackpressureDrop()
+                .map(tick -> registry.size())
+                .distinctUntilChanged()
+                .replay(1)
+                .refCount();
+        NewsProperties.History history = properties.getHistory();
+        this.newsLog = new NewsLog(history.getMaxItems(), history.getMaxBytes().toBytes(),
+                history.getMaxAge().toMillis());
+        this.newsIndex = new NewsIndex(newsLog);
+        newsLog.addListener(newsIndex);
+        this.searchIndex = new SearchIndex(newsLog);
+        newsLog.addListener(searchIndex);
+        registerHistoryMetrics(meterRegistry);
+        this.replayCohorts = new ReplayCohorts(this::history, replayPacer,
+                properties.getSubscriber().getBufferSize(), properties.getReplay().getCohortWindow(), meterRegistry);
+        this.publishLatency = Timer.builder("news.publish.latency")
+                .description("Time from addNews() until the news is appended and handed to the fan-out")
+                .register(meterRegistry);
+        Gauge.builder("news.publish.queue.depth", pendingCount, AtomicInteger::get)
+                .description("News waiting to be published")
+                .register(meterRegistry);
+
+        if (store.lastId() > 0) {
+            for (SseFrame frame : store.recent(history.getMaxItems())) {
+                newsLog.append(frame, frame.retainedSize());
+            }
+            // News broadcast but lost before its sync may have reached clients; never reuse its ids
+            idGenerator.set(store.reservedId() + 1);
+            lastAppendedId = store.lastId();
+            log.info("Recovered {} news items from storage, continuing at id {}", newsLog.size(), idGenerator.get());
+            return;
+        }
 
-    // Initialize with default news items
-    {
-        newsList.add(new News(idGenerator.getAndIncrement(),
+        // Initialize with default news items, after any ids reserved by a run whose news is gone
+        idGenerator.set(store.reservedId() + 1);
+        append(new News(idGenerator.getAndIncrement(),
                 "Welcome to News Broadcasting",
                 "This is a Server-Sent Events (SSE) based news broadcasting system. Subscribe to receive real-time news updates!",
                 LocalDateTime.now().minusHours(2),
                 "Technology",
                 "System Admin"));
 
-        newsList.add(new News(idGenerator.getAndIncrement(),
+        append(new News(idGenerator.getAndIncrement(),
                 "Spring Boot WebFlux SSE Implementation",
                 "This application demonstrates real-time news broadcasting using Spring Boot WebFlux and Server-Sent Events. New subscribers will receive all existing news immediately upon connection.",
                 LocalDateTime.now().minusHours(1),
                 "Technology",
                 "Development Team"));
 
-        log.info("Initialized with {} default news items", newsList.size());
+        log.info("Initialized with {} default news items", newsLog.size());
+    }
+
+    private void registerHistoryMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("news.history.size", newsLog, NewsLog::size)
+                .description("News retained for replay")
+                .register(meterRegistry);
+        Gauge.builder("news.history.bytes", newsLog, NewsLog::retainedBytes)
+                .description("Estimated bytes retained for replay")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        for (NewsLog.EvictionReason reason : NewsLog.EvictionReason.values()) {
+            FunctionCounter.builder("news.history.evictions", newsLog, history -> history.evictions(reason))
+                    .description("News evicted from the replay history")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry);
+        }
     }
 
     /**
-     * Initialize heartbeat mechanism to detect dead connections
+     * Start the periodic age-based eviction of the replay history
+     * Heartbeats and dead connection detection are handled per connection by the HeartbeatScheduler
      */
     @PostConstruct
     public void init() {
+        Duration interval = properties.getHistory().getEvictionInterval();
+        evictionTask = Flux.interval(interval, interval)
+                .subscribe(tick -> evictExpired());
         log.info("NewsService initialized with WebFlux reactive streams");
     }
 
     /**
      * Cleanup on shutdown
+     * News queued before is still published; news that could not be is failed, so no addNews()
+     * caller waits forever. Open connections have normally been drained by the NewsDrainer
+     * already; anything left is completed
      */
     @PreDestroy
     public void cleanup() {
-        newsSink.tryEmitComplete();
-        countSink.tryEmitComplete();
+        if (evictionTask != null) {
+            evictionTask.dispose();
+        }
+        closed = true;
+        try {
+            publisher.disposeGracefully().block(PUBLISHER_SHUTDOWN_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("Publisher did not finish within {}: {}", PUBLISHER_SHUTDOWN_TIMEOUT, e.getMessage());
+            publisher.dispose();
+        }
+        publisherStopped = true;
+        failQueued();
+        broadcaster.completeAll();
         log.info("NewsService cleanup completed");
     }
 
@@ -70,55 +214,411 @@ public class NewsService {
      * Each subscriber gets a fresh stream with all existing news, then new news
      */
     public Flux<News> getNewsStream() {
+        return getNewsStream(null);
+    }
+
+    /**
+     * Get a Flux of news that resumes after the given event id, then streams new news
+     * A null id replays the whole history; otherwise only news with a greater id are replayed
+     */
+    public Flux<News> getNewsStream(Long lastEventId) {
+        return getNewsFrames(lastEventId, NewsFilter.NONE, null, false).mapNotNull(SseFrame::getNews);
+    }
 
-        Flux<News> existingNewsFlux = Flux.fromIterable(newsList);
-        Flux<News> newNewsFlux = newsSink.asFlux();
+    /**
+     * Same as getNewsStream(Long), but emits the pre-encoded SSE frames shared by all subscribers
+     * and only news matching the filter, both for the replay and for live delivery
+     * The live subscription is registered before the history is read and buffers while the replay
+     * runs, up to the subscriber buffer size, beyond which the replay continues from history
+     * instead; replays of the same range share one cursor over the history; ids are sequence
+     * numbers, so anything at or below the last id sent is a duplicate and news published
+     * mid-replay is neither lost nor sent twice
+     * A Last-Event-ID ahead of the newest news resumes after the newest
+     * The connection is registered for its whole lifetime and unregistered exactly once
+     * Unfiltered replays from storage arrive as batch frames of several events each
+     */
+    public Flux<SseFrame> getNewsFrames(Long lastEventId, NewsFilter filter, String remoteAddress) {
+        return getNewsFrames(lastEventId, filter, remoteAddress, true);
+    }
 
-        return existingNewsFlux.concatWith(newNewsFlux)
-                .concatWith(Flux.never())
-                .doOnSubscribe(subscription -> {
-                    int count = subscriberCount.incrementAndGet();
-                    log.info("New subscriber connected. Total subscribers: {}", count);
-                    countSink.tryEmitNext(count);
-                })
-                .doOnCancel(() -> {
-                    int count = subscriberCount.decrementAndGet();
-                    log.info("Subscriber cancelled. Remaining subscribers: {}", count);
-                    countSink.tryEmitNext(count);
-                })
-                .doOnError(error -> {
-                    log.error("Error in news stream: {}", error.getMessage());
-                })
-                .doOnTerminate(() -> {
-                    int count = subscriberCount.decrementAndGet();
-                    log.info("Subscriber stream terminated. Remaining subscribers: {}", count);
-                    countSink.tryEmitNext(count);
-                });
+    private Flux<SseFrame> getNewsFrames(Long lastEventId, NewsFilter filter, String remoteAddress, boolean batched) {
+
+        // The live part only ends on shutdown or when a slow consumer is disconnected
+        return Flux.defer(() -> {
+            NewsConnection connection = broadcaster.connect(filter, remoteAddress);
+            log.info("New subscriber {} connected. Total subscribers: {}", connection.getId(), registry.size());
+
+            // An id beyond the newest news here, from another node or from before a restart without
+            // storage, would hold back live news until new ids pass it; resume after the newest instead
+            Long resumeId = lastEventId == null ? null : Math.min(lastEventId, lastAppendedId);
+            boolean replayBatched = batched && filter.isEmpty();
+            long[] lastSentId = {resumeId == null ? 0 : resumeId};
+            Flux<SseFrame> newsFrames = replayCohorts.replay(resumeId, filter, replayBatched)
+                    .concatWith(live(connection, filter, replayBatched, resumeId, lastSentId))
+                    .mapNotNull(frame -> {
+                        long id = frame.getId();
+                        if (id < 0) {
+                            return frame; // control frame
+                        }
+                        // Null if everything in the frame was sent already; a batch may have been sent in part
+                        SseFrame unsent = frame.after(lastSentId[0]);
+                        if (unsent != null) {
+                            lastSentId[0] = id;
+                        }
+                        return unsent;
+                    });
+
+            heartbeats.watch(connection);
+            return connection.output(newsFrames)
+                    .doOnError(error -> log.error("Error in news stream: {}", error.getMessage()))
+                    .doFinally(signal -> {
+                        heartbeats.unwatch(connection);
+                        if (broadcaster.disconnect(connection)) {
+                            log.info("Subscriber {} disconnected ({}). Remaining subscribers: {}",
+                                    connection.getId(), signal, registry.size());
+                        }
+                    });
+        });
+    }
+
+    /**
+     * The live frames of a connection once its replay is done; if its buffer overflowed during the
+     * replay, the frames it held were discarded, so the replay first continues from the last id sent
+     */
+    private Flux<SseFrame> live(NewsConnection connection, NewsFilter filter, boolean batched, Long resumeId,
+                                long[] lastSentId) {
+        return Flux.defer(() -> {
+            if (connection.goLive()) {
+                return connection.frames();
+            }
+            long sent = lastSentId[0];
+            Long after = resumeId == null && sent == 0 ? null : sent;
+            return replayCohorts.replay(after, filter, batched)
+                    .concatWith(live(connection, filter, batched, resumeId, lastSentId));
+        });
+    }
+
+    /**
+     * Replay source for the given id: the in-memory window, or storage for ids older than it
+     * Subscribers without a Last-Event-ID (WINDOW) only ever get the in-memory window
+     * Storage holds everything still in memory as well, so a replay never straddles the two
+     * Batched replays from storage write whole slices of the mapped segments instead of single frames
+     */
+    private Flux<SseFrame> history(long afterId, boolean batched) {
+        if (afterId == ReplayCohorts.History.WINDOW) {
+            return Flux.fromIterable(newsLog.after(null));
+        }
+        if (batched && isStored(afterId)) {
+            return store.batchesAfter(afterId, properties.getReplay().getBatchSize());
+        }
+        return Flux.fromIterable(historyFrames(afterId));
+    }
+
+    /**
+     * Frames after the given id from whichever tier holds them: memory, segments or archive
+     */
+    private Iterable<SseFrame> historyFrames(long afterId) {
+        return isStored(afterId) ? store.frames(afterId) : newsLog.after(afterId);
+    }
+
+    private boolean isStored(long afterId) {
+        long firstInMemory = newsLog.firstId();
+        return store.isEnabled() && (firstInMemory < 0 || afterId + 1 < firstInMemory) && store.lastId() > afterId;
+    }
+
+    /**
+     * Add new news and notify all subscribers, acknowledged with the configured durability
+     */
+    public Mono<News> addNews(String title, String content, String category, String author) {
+        return addNews(title, content, category, author, null);
     }
 
     /**
      * Add new news and notify all subscribers
+     * Safe to call from any number of threads: the request is queued and the returned Mono completes
+     * once the publisher thread has assigned its id, appended it to the history and fanned it out,
+     * and with FSYNC durability once it is on disk; a null durability uses the configured default
+     */
+    public Mono<News> addNews(String title, String content, String category, String author, Durability durability) {
+        Durability effective = durability == null ? properties.getStorage().getDurability() : durability;
+        return Mono.defer(() -> {
+            if (closed) {
+                return Mono.error(shutDown());
+            }
+            PendingNews pending = new PendingNews(title, content, category, author, effective);
+            pendingCount.incrementAndGet();
+            pendingNews.offer(pending);
+            scheduleDrain();
+            if (publisherStopped) {
+                // Raced with shutdown: nothing will drain the queue any more
+                failQueued();
+            }
+            return pending.result.asMono();
+        });
+    }
+
+    private void scheduleDrain() {
+        if (drainWip.getAndIncrement() == 0) {
+            try {
+                publisher.schedule(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the news is failed once the publisher has stopped
+            }
+        }
+    }
+
+    /**
+     * Fail everything still queued; only once the publisher thread has stopped, which makes
+     * this the only consumer of the queue, and serialized for callers racing with shutdown
+     */
+    private synchronized void failQueued() {
+        PendingNews pending;
+        while ((pending = pendingNews.poll()) != null) {
+            pendingCount.decrementAndGet();
+            pending.result.tryEmitError(shutDown());
+        }
+    }
+
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("News service is shut down");
+    }
+
+    /**
+     * Publish everything queued so far; only ever runs on the publisher thread
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            if (evictionRequested) {
+                evictionRequested = false;
+                newsLog.evictExpired();
+            }
+            PendingNews pending;
+            while ((pending = pendingNews.poll()) != null) {
+                pendingCount.decrementAndGet();
+                publish(pending);
+            }
+            missed = drainWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void publish(PendingNews pending) {
+        try {
+            News news = new News(idGenerator.getAndIncrement(), pending.title, pending.content, LocalDateTime.now(),
+                    pending.category, pending.author);
+            SseFrame frame = append(news);
+
+            log.info("New news added: {}", news.getTitle());
+
+            // Hand the encoded frame to every subscriber's buffer
+            broadcaster.publish(frame);
+            publishLatency.record(System.nanoTime() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+            if (pending.durability == Durability.FSYNC) {
+                // Group commit: the sync thread acknowledges every news covered by one fsync at once
+                store.awaitDurable(news.getId())
+                        .thenReturn(news)
+                        .subscribe(pending.result::tryEmitValue, pending.result::tryEmitError);
+            } else {
+                pending.result.tryEmitValue(news);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to publish news '{}': {}", pending.title, e.getMessage(), e);
+            pending.result.tryEmitError(e);
+        }
+    }
+
+    /**
+     * Encode a news item once and append the frame to storage and to the replay history
+     */
+    private SseFrame append(News news) {
+        SseFrame frame = frameEncoder.encode(news);
+        store.append(frame);
+        newsLog.append(frame, frame.retainedSize());
+        lastAppendedId = news.getId();
+        return frame;
+    }
+
+    /**
+     * Evict news older than the configured maximum age
+     * Runs on the publisher thread because the news log only supports a single writer
+     */
+    private void evictExpired() {
+        evictionRequested = true;
+        scheduleDrain();
+    }
+
+    /**
+     * The in-memory window as a cached, pre-encoded JSON array with a strong ETag
+     * One encoding per version, the range of ids held, runs on a worker thread and is shared by
+     * every request for that version; empty if the window is larger than the snapshot limit,
+     * which is told from its byte accounting without reading it, or was evicted from while encoding
+     */
+    public Mono<NewsSnapshot> getSnapshot() {
+        return Mono.defer(() -> {
+            while (true) {
+                long lastId = lastAppendedId;
+                long firstId = newsLog.firstId();
+                SnapshotBuild current = snapshot.get();
+                if (current != null && current.firstId == firstId && current.lastId == lastId) {
+                    return current.result;
+                }
+                Mono<NewsSnapshot> result = Mono.fromCallable(() -> encodeSnapshot(firstId, lastId))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .cache();
+                if (snapshot.compareAndSet(current, new SnapshotBuild(firstId, lastId, result))) {
+                    return result;
+                }
+            }
+        });
+    }
+
+    /**
+     * Encode the window holding exactly firstId..lastId, or null if it no longer does or is too large
+     */
+    private NewsSnapshot encodeSnapshot(long firstId, long lastId) {
+        long maxBytes = properties.getQuery().getSnapshotMaxSize().toBytes();
+        // Each frame is accounted at more than twice its encoded size, which is more than its JSON
+        if (newsLog.retainedBytes() / 2 > maxBytes) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        out.write('[');
+        try {
+            for (SseFrame frame : newsLog.after(firstId - 1)) {
+                if (frame.getId() > lastId) {
+                    break;
+                }
+                if (out.size() == 1 && frame.getId() != firstId) {
+                    return null; // evicted since the range was read
+                }
+                if (out.size() > 1) {
+                    out.write(',');
+                }
+                channel.write(frameEncoder.json(frame.asByteBuffer()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.write(']');
+        return new NewsSnapshot(snapshotEpoch, firstId, lastId, out.toByteArray());
+    }
+
+    /**
+     * Get the news with the given id, empty if it is not retained
+     * The in-memory window is looked up by id without allocating, on the calling thread; older
+     * news is read from storage on a worker thread, as it may fault in pages or inflate a block
+     */
+    public Mono<News> findNews(long id) {
+        SseFrame frame = newsLog.find(id);
+        if (frame != null) {
+            return Mono.just(frame.getNews());
+        }
+        return store.isEnabled()
+                ? Mono.fromCallable(() -> find(id)).subscribeOn(Schedulers.boundedElastic())
+                : Mono.empty();
+    }
+
+    /**
+     * Stream the news with the given ids, in the order asked for, skipping ids that are not retained
+     * Read on a worker thread, as any of them may be in storage
      */
-    public News addNews(String title, String content, String category, String author) {
-        News news = new News(idGenerator.getAndIncrement(), title, content, LocalDateTime.now(), category, author);
-        newsList.add(news);
+    public Flux<News> findNews(List<Long> ids) {
+        return Flux.fromIterable(ids).mapNotNull(this::find).subscribeOn(Schedulers.boundedElastic());
+    }
 
-        log.info("New news added: {}", news.getTitle());
+    private News find(long id) {
+        SseFrame frame = newsLog.find(id);
+        if (frame == null && store.isEnabled()) {
+            frame = store.find(id);
+        }
+        return frame == null ? null : frame.getNews();
+    }
 
-        // Emit the new news to all subscribers via the sink
-        Sinks.EmitResult result = newsSink.tryEmitNext(news);
-        if (result.isFailure()) {
-            log.warn("Failed to emit news to subscribers: {}", result);
+    /**
+     * Stream the news after the given id, at most limit items; a null id streams the in-memory
+     * window, as for subscribers, while an explicit id reads through storage (after=0 exports it all)
+     * The history is read lazily through every tier with backpressure, so a page or a full
+     * export runs in constant memory, on a worker thread rather than the event loop; a null
+     * limit streams everything
+     */
+    public Flux<News> getNews(Long afterId, Integer limit) {
+        Flux<News> news = Flux.defer(() ->
+                        Flux.fromIterable(afterId == null ? newsLog.after(null) : historyFrames(afterId)))
+                .map(SseFrame::getNews)
+                .subscribeOn(Schedulers.boundedElastic());
+        return limit == null ? news : news.take(limit, true);
+    }
+
+    /**
+     * Stream the news matching the filter and published within [from, to], either bound being
+     * optional, after the given id and at most limit items, in id order
+     * Without an id or a from time only the in-memory window is queried, as for GET /news; a query
+     * reaching further back, with an id or a from time older than the window, scans storage up to
+     * the window and then continues on the secondary indexes, which cover the window
+     */
+    public Flux<News> queryNews(NewsFilter filter, LocalDateTime from, LocalDateTime to, Long afterId, Integer limit) {
+        Flux<News> news = Flux.defer(() -> {
+                    if (afterId == null && (from == null || !store.isEnabled())) {
+                        return Flux.fromIterable(newsIndex.query(filter, from, to, 0));
+                    }
+                    long after = afterId == null ? 0 : afterId;
+                    if (from != null && store.isEnabled()) {
+                        after = Math.max(after, storedBefore(from));
+                    }
+                    return query(filter, from, to, after);
+                })
+                .map(SseFrame::getNews)
+                .subscribeOn(Schedulers.boundedElastic());
+        return limit == null ? news : news.take(limit, true);
+    }
+
+    /**
+     * Matching frames after the given id: a filtered scan of storage while the ids are older than
+     * the window, then the indexes; scans storage again if the window moved on in the meantime,
+     * and goes straight to the indexes when storage has nothing older than the window
+     */
+    private Flux<SseFrame> query(NewsFilter filter, LocalDateTime from, LocalDateTime to, long afterId) {
+        if (!isStored(afterId)) {
+            return Flux.fromIterable(newsIndex.query(filter, from, to, afterId));
         }
+        long[] lastScanned = {afterId};
+        return Flux.fromIterable(store.frames(afterId))
+                .takeWhile(frame -> newsLog.firstId() < 0 || frame.getId() < newsLog.firstId())
+                .doOnNext(frame -> lastScanned[0] = frame.getId())
+                .filter(frame -> NewsIndex.matches(frame.getNews(), filter, from, to))
+                .concatWith(Flux.defer(() -> lastScanned[0] == afterId
+                        ? Flux.fromIterable(newsIndex.query(filter, from, to, afterId))
+                        : query(filter, from, to, lastScanned[0])));
+    }
 
-        return news;
+    /**
+     * Id just before the first stored news older than the window that may have been published at
+     * or after the given time, by bisecting the stored ids, whose publish times grow with them
+     */
+    private long storedBefore(LocalDateTime from) {
+        long low = store.firstId();
+        long high = newsLog.firstId() < 0 ? store.lastId() + 1 : newsLog.firstId();
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            SseFrame frame = store.find(middle);
+            LocalDateTime published = frame == null ? null : frame.getNews().getPublishedTime();
+            if (published == null || published.isBefore(from)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
     }
 
     /**
-     * Get all news
+     * The limit best matches of a keyword query over the titles and contents of the in-memory
+     * history, most relevant first; news matching any of the terms qualifies
      */
-    public List<News> getAllNews() {
-        return new ArrayList<>(newsList);
+    public Flux<News> searchNews(String query, int limit) {
+        return Flux.defer(() -> Flux.fromIterable(searchIndex.search(query, limit)))
+                .map(SseFrame::getNews);
     }
 
     /**
@@ -126,25 +626,48 @@ public class NewsService {
      * Returns the current count of active subscribers to the news stream
      */
     public int getSubscriberCount() {
-        return subscriberCount.get();
+        return registry.size();
+    }
+
+    /**
+     * Get the open subscriber connections with their per-connection statistics
+     */
+    public Collection<NewsConnection> getConnections() {
+        return registry.all();
     }
 
     /**
      * Get a Flux of subscriber count updates
-     * Emits the current count immediately, then streams updates whenever the count changes
-     * Supports multiple subscribers - all subscribers receive the same count updates via multicast sink
+     * Emits the current count immediately, then at most one update per count interval, only when the count changed
+     * The sampling is computed once and shared, so a reconnect storm costs listeners O(1) messages per interval
      */
     public Flux<Integer> getSubscriberCountStream() {
-        // Get the multicast flux from the sink (already supports multiple subscribers)
-        Flux<Integer> countUpdates = countSink.asFlux()
-                .distinctUntilChanged(); // Only emit when count actually changes
-
-        // For each new subscriber, emit the current count first, then stream updates
-        // Use defer to get fresh current count for each subscriber, then concat with shared updates
-        return Flux.defer(() -> Flux.just(subscriberCount.get()))
-                .concatWith(countUpdates)
-                .concatWith(Flux.never()) // Keep stream open indefinitely - never completes
+        return subscriberCounts
                 .doOnSubscribe(subscription -> log.debug("New subscriber connected to count stream"))
                 .doOnCancel(() -> log.debug("Subscriber disconnected from count stream"));
     }
+
+    /**
+     * The one encoding of the snapshot for the window firstId..lastId, running or done
+     */
+    private record SnapshotBuild(long firstId, long lastId, Mono<NewsSnapshot> result) {
+    }
+
+    private static final class PendingNews {
+        final String title;
+        final String content;
+        final String category;
+        final String author;
+        final Durability durability;
+        final long enqueuedAt = System.nanoTime();
+        final Sinks.One<News> result = Sinks.one();
+
+        PendingNews(String title, String content, String category, String author, Durability durability) {
+            this.title = title;
+            this.content = content;
+            this.category = category;
+            this.author = author;
+            this.durability = durability;
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package com.example.server_sent_event.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The in-memory news window as one encoded JSON array, plus its gzipped form, at one version
+ * A version is the range of ids held, firstId..lastId; ids are sequence numbers, so that range
+ * alone determines the content and its strong ETag. Encoded once and shared by every request
+ * until a publish or an eviction moves the range
+ */
+public final class NewsSnapshot {
+
+    private final long lastId;
+    private final String eTag;
+    private final byte[] json;
+    private final byte[] gzip;
+
+    NewsSnapshot(String epoch, long firstId, long lastId, byte[] json) {
+        this.lastId = lastId;
+        this.eTag = "\"" + epoch + "-" + firstId + "-" + lastId + "\"";
+        this.json = json;
+        this.gzip = gzip(json);
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Strong ETag of the JSON body; the gzipped body is a different representation with its own tag
+     */
+    public String eTag(boolean gzipped) {
+        return gzipped ? eTag.substring(0, eTag.length() - 1) + "-gzip\"" : eTag;
+    }
+
+    /**
+     * The encoded body, shared by all requests; must not be modified
+     */
+    public byte[] body(boolean gzipped) {
+        return gzipped ? gzip : json;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+}
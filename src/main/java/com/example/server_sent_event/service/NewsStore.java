@@ -0,0 +1,175 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import com.example.server_sent_event.storage.Archive;
+import com.example.server_sent_event.storage.SegmentLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Persistent news history in a segment log of encoded frames
+ * Survives restarts and holds more history than the in-memory window; replay reads from the
+ * memory-mapped segments, and from the compressed archive for news older than those
+ * With storage disabled every operation is a no-op
+ */
+@Component
+@Slf4j
+public class NewsStore {
+
+    // Upper bound of a replay batch, so one write never pins a large part of a segment
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    // Null when storage is disabled
+    private final SegmentLog segmentLog;
+    private final SseFrameEncoder frameEncoder;
+
+    public NewsStore(NewsProperties properties, SseFrameEncoder frameEncoder) {
+        this.frameEncoder = frameEncoder;
+        NewsProperties.Storage storage = properties.getStorage();
+        if (!storage.isEnabled()) {
+            this.segmentLog = null;
+            return;
+        }
+        Path directory = Path.of(storage.getDirectory());
+        NewsProperties.Storage.Archive archiveSettings = storage.getArchive();
+        try {
+            Archive archive = archiveSettings.isEnabled()
+                    ? Archive.open(directory.resolve("archive"), archiveSettings.getBlockSize(),
+                    archiveSettings.getCacheBlocks(), archiveSettings.getMaxSize().toBytes())
+                    : null;
+            this.segmentLog = SegmentLog.open(directory, (int) storage.getSegmentSize().toBytes(),
+                    storage.getMaxSegments(), storage.getSyncInterval(), archive);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open news storage in " + directory, e);
+        }
+        log.info("Opened news storage in {} with {} segments, last id {}", directory, segmentLog.segmentCount(),
+                segmentLog.lastId());
+    }
+
+    public boolean isEnabled() {
+        return segmentLog != null;
+    }
+
+    /**
+     * Id of the last stored news, or 0 if nothing is stored
+     */
+    public long lastId() {
+        return segmentLog == null ? 0 : segmentLog.lastId();
+    }
+
+    /**
+     * Highest id that may have been handed out by an earlier run, or 0 if none
+     * Above lastId() if news was broadcast but lost in a crash before it was synced
+     */
+    public long reservedId() {
+        return segmentLog == null ? 0 : segmentLog.reservedId();
+    }
+
+    /**
+     * Id of the oldest stored news, or 0 if nothing is stored
+     */
+    public long firstId() {
+        return segmentLog == null ? 0 : segmentLog.firstId();
+    }
+
+    /**
+     * Write a news frame to the log; it becomes durable with the next sync, but its id is reserved
+     * on disk first, as subscribers may see the news before then
+     * Must only be called by the publisher thread
+     */
+    void append(SseFrame frame) {
+        if (segmentLog != null) {
+            segmentLog.reserve(frame.getId());
+            segmentLog.append(frame.getId(), frame.asByteBuffer());
+        }
+    }
+
+    /**
+     * Completes once the news with the given id is on disk
+     */
+    Mono<Void> awaitDurable(long id) {
+        return segmentLog == null ? Mono.empty() : segmentLog.awaitDurable(id);
+    }
+
+    /**
+     * The stored frame with the given id, from a segment or the archive, or null if it is not retained
+     */
+    SseFrame find(long id) {
+        ByteBuffer record = segmentLog == null ? null : segmentLog.read(id);
+        return record == null ? null : frameEncoder.stored(record);
+    }
+
+    /**
+     * Stored frames with an id greater than the given id, as views of the mapped segments
+     * whose news is only decoded if something asks for it
+     */
+    Flux<SseFrame> after(long id) {
+        return Flux.defer(() -> Flux.fromIterable(frames(id)));
+    }
+
+    /**
+     * Same as after(long), for callers that iterate synchronously
+     * Reads go through the segments and on to the archive for older ids
+     */
+    Iterable<SseFrame> frames(long id) {
+        if (segmentLog == null) {
+            return List.of();
+        }
+        Iterable<ByteBuffer> records = segmentLog.after(id);
+        return () -> new Iterator<>() {
+            private final Iterator<ByteBuffer> iterator = records.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public SseFrame next() {
+                return frameEncoder.stored(iterator.next());
+            }
+        };
+    }
+
+    /**
+     * Stored news with an id greater than the given id in batch frames of up to batchSize events
+     * Each batch is one contiguous slice of a mapped segment, record headers included as SSE
+     * comments, so it reaches the socket without being copied onto the heap or decoded
+     */
+    Flux<SseFrame> batchesAfter(long id, int batchSize) {
+        if (segmentLog == null) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> Flux.fromIterable(segmentLog.batchesAfter(id, batchSize, MAX_BATCH_BYTES))
+                .map(batch -> SseFrame.batch(batch.firstId(), batch.lastId(), batch.bytes())));
+    }
+
+    /**
+     * The most recent stored frames, oldest first, to seed the in-memory history after a restart
+     */
+    List<SseFrame> recent(int maxItems) {
+        List<SseFrame> frames = new ArrayList<>();
+        if (segmentLog != null) {
+            frames(Math.max(0, segmentLog.lastId() - maxItems)).forEach(frames::add);
+        }
+        return frames;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (segmentLog != null) {
+            segmentLog.close();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.server_sent_event.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Coalesces concurrent replays of the same history range into shared cursors
+ * A reconnecting subscriber joins a running cursor with the same filter that started at most
+ * the join window before its Last-Event-ID and has not passed it yet, and receives the same
+ * pre-encoded frames as the rest of its cohort; one cursor reads and paces the history for all
+ * of them. A member whose buffer fills up is detached from the cursor, and every member finishes
+ * with a private replay from the last frame it saw, so nothing is lost by joining late or falling behind
+ */
+class ReplayCohorts {
+
+    private final History history;
+    private final ReplayPacer pacer;
+    private final int memberBuffer;
+    private final long joinWindow;
+
+    // Running cursors per filter, keyed by the id they replay after; batched replays have their own
+    // An inner map is created and removed under the outer map's lock, so filters never pile up
+    private final ConcurrentMap<NewsFilter, ConcurrentNavigableMap<Long, ReplayCursor>> cursors =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<NewsFilter, ConcurrentNavigableMap<Long, ReplayCursor>> batchedCursors =
+            new ConcurrentHashMap<>();
+
+    private final Counter started;
+    private final Counter joined;
+
+    ReplayCohorts(History history, ReplayPacer pacer, int memberBuffer, long joinWindow, MeterRegistry meterRegistry) {
+        this.history = history;
+        this.pacer = pacer;
+        this.memberBuffer = memberBuffer;
+        this.joinWindow = joinWindow;
+        this.started = Counter.builder("news.replay.cursors")
+                .description("Shared replay cursors started")
+                .register(meterRegistry);
+        this.joined = Counter.builder("news.replay.cohort.joins")
+                .description("Replays that joined an already running cursor")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Source of the replayed frames
+     */
+    interface History {
+
+        /**
+         * Id standing for "no Last-Event-ID": replay only the window held in memory, never storage
+         */
+        long WINDOW = -1;
+
+        /**
+         * Frames with an id greater than the given id, or the in-memory window for WINDOW;
+         * batched sources may emit batch frames
+         */
+        Flux<SseFrame> after(long id, boolean batched);
+    }
+
+    /**
+     * Replay the history after the given id, or the in-memory window for a null id, matching the filter
+     */
+    Flux<SseFrame> replay(Long lastEventId, NewsFilter filter, boolean batched) {
+        long after = lastEventId == null ? History.WINDOW : lastEventId;
+        return Flux.defer(() -> {
+            Member member = join(after, filter, batched);
+            return member.frames()
+                    .concatWith(Flux.defer(() -> privateReplay(member.lastSeen, filter, batched)));
+        });
+    }
+
+    /**
+     * Number of cursors currently running
+     */
+    int activeCursors() {
+        return cursors.values().stream().mapToInt(Map::size).sum()
+                + batchedCursors.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Number of filters with running cursors
+     */
+    int activeFilters() {
+        return cursors.size() + batchedCursors.size();
+    }
+
+    private Member join(long after, NewsFilter filter, boolean batched) {
+        ConcurrentMap<NewsFilter, ConcurrentNavigableMap<Long, ReplayCursor>> byFilter =
+                batched ? batchedCursors : cursors;
+        while (true) {
+            ConcurrentNavigableMap<Long, ReplayCursor> byStart = byFilter.get(filter);
+            Map.Entry<Long, ReplayCursor> nearest = byStart == null ? null : byStart.floorEntry(after);
+            // A window cursor starts wherever the window does, so only fresh subscribers may join it
+            if (nearest != null && after - nearest.getKey() <= joinWindow
+                    && (nearest.getKey() != History.WINDOW || after == History.WINDOW)) {
+                Member member = nearest.getValue().tryJoin(after);
+                if (member != null) {
+                    joined.increment();
+                    return member;
+                }
+            }
+            ReplayCursor cursor = new ReplayCursor(after, filter, batched, byFilter);
+            Member member = cursor.tryJoin(after);
+            if (cursor.register()) {
+                started.increment();
+                cursor.start();
+                return member;
+            }
+            // Another cursor starting at the same id won the race; join that one instead
+        }
+    }
+
+    private Flux<SseFrame> privateReplay(long after, NewsFilter filter, boolean batched) {
+        return pacer.pace(filtered(Flux.defer(() -> history.after(after, batched)), filter));
+    }
+
+    private static Flux<SseFrame> filtered(Flux<SseFrame> frames, NewsFilter filter) {
+        return filter.isEmpty() ? frames : frames.filter(frame -> filter.matches(frame.getNews()));
+    }
+
+    /**
+     * One pass over the history shared by a cohort of members
+     * Emission, joining and leaving are serialized on the cursor's monitor, so a member either
+     * joins before the cursor passes its id or not at all
+     */
+    private final class ReplayCursor {
+
+        private final long after;
+        private final NewsFilter filter;
+        private final boolean batched;
+        private final ConcurrentMap<NewsFilter, ConcurrentNavigableMap<Long, ReplayCursor>> registry;
+
+        // Copy-on-write, because completing or feeding a member can make it leave synchronously
+        private final List<Member> members = new CopyOnWriteArrayList<>();
+
+        // Guarded by this
+        private long position;
+        private boolean done;
+
+        private volatile Disposable run;
+
+        ReplayCursor(long after, NewsFilter filter, boolean batched,
+                     ConcurrentMap<NewsFilter, ConcurrentNavigableMap<Long, ReplayCursor>> registry) {
+            this.after = after;
+            this.filter = filter;
+            this.batched = batched;
+            this.registry = registry;
+            this.position = after;
+        }
+
+        /**
+         * Make this cursor joinable; false if another one already runs from the same id
+         */
+        boolean register() {
+            boolean[] registered = {false};
+            registry.compute(filter, (key, byStart) -> {
+                ConcurrentNavigableMap<Long, ReplayCursor> target =
+                        byStart != null ? byStart : new ConcurrentSkipListMap<>();
+                registered[0] = target.putIfAbsent(after, this) == null;
+                return target;
+            });
+            return registered[0];
+        }
+
+        /**
+         * Stop others joining this cursor, and forget the filter once it has no cursors left
+         */
+        private void unregister() {
+            registry.computeIfPresent(filter, (key, byStart) -> {
+                byStart.remove(after, this);
+                return byStart.isEmpty() ? null : byStart;
+            });
+        }
+
+        void start() {
+            run = pacer.pace(filtered(Flux.defer(() -> history.after(after, batched)), filter))
+                    .subscribe(this::emit, error -> finish(), this::finish);
+        }
+
+        synchronized Member tryJoin(long memberAfter) {
+            if (done || position > memberAfter) {
+                return null;
+            }
+            Member member = new Member(this, memberAfter, memberBuffer);
+            members.add(member);
+            return member;
+        }
+
+        private synchronized void emit(SseFrame frame) {
+            position = frame.getId();
+            for (Member member : members) {
+                if (!member.offer(frame)) {
+                    members.remove(member);
+                }
+            }
+        }
+
+        private void finish() {
+            synchronized (this) {
+                done = true;
+                members.forEach(Member::complete);
+                members.clear();
+            }
+            unregister();
+        }
+
+        void leave(Member member) {
+            boolean abandoned;
+            synchronized (this) {
+                abandoned = members.remove(member) && members.isEmpty() && !done;
+                if (abandoned) {
+                    done = true;
+                }
+            }
+            if (abandoned) {
+                unregister();
+                Disposable current = run;
+                if (current != null) {
+                    current.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscriber's view of a shared cursor with its own bounded buffer
+     */
+    private static final class Member {
+
+        private final ReplayCursor cursor;
+        private final long after;
+        private final Sinks.Many<SseFrame> sink;
+
+        // Id of the last frame handed downstream; the private replay resumes after it
+        private volatile long lastSeen;
+
+        Member(ReplayCursor cursor, long after, int bufferSize) {
+            this.cursor = cursor;
+            this.after = after;
+            this.lastSeen = after;
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<SseFrame>get(bufferSize).get());
+        }
+
+        /**
+         * Hand a frame to this member; false detaches it from the cursor because its buffer is full
+         */
+        boolean offer(SseFrame frame) {
+            if (sink.tryEmitNext(frame).isSuccess()) {
+                return true;
+            }
+            complete();
+            return false;
+        }
+
+        void complete() {
+            sink.tryEmitComplete();
+        }
+
+        Flux<SseFrame> frames() {
+            // A batch may start at or before this member's id; only its unseen part is passed on
+            return sink.asFlux()
+                    .mapNotNull(frame -> frame.after(after))
+                    .doOnNext(frame -> lastSeen = frame.getId())
+                    .doFinally(signal -> cursor.leave(this));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Paces history replay so reconnect storms cannot crowd out live delivery
+ * Every replayed frame takes a token from the node-wide bucket and from the connection's own
+ * bucket, and replay runs on its own scheduler rather than on the event loops, so catching-up
+ * clients share a bounded replay budget while live frames go out unthrottled
+ */
+@Component
+public class ReplayPacer {
+
+    private final NewsProperties.Replay settings;
+    private final TokenBucket nodeBucket;
+    private final Scheduler scheduler;
+    private final Counter replayed;
+    private final Counter throttled;
+
+    public ReplayPacer(NewsProperties properties, MeterRegistry meterRegistry) {
+        this.settings = properties.getReplay();
+        this.nodeBucket = new TokenBucket(settings.getNodeRate(), settings.getNodeBurst());
+        this.scheduler = Schedulers.newParallel("news-replay",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), true);
+        this.replayed = Counter.builder("news.replay.frames")
+                .description("Frames sent from the replay history")
+                .register(meterRegistry);
+        this.throttled = Counter.builder("news.replay.throttled")
+                .description("Replayed frames delayed by the replay rate limits")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Pace one connection's replay
+     */
+    public Flux<SseFrame> pace(Flux<SseFrame> replay) {
+        return Flux.defer(() -> {
+            TokenBucket connectionBucket = new TokenBucket(settings.getConnectionRate(), settings.getConnectionBurst());
+            // Prefetch of one, so tokens are only reserved as the client actually consumes the replay
+            return replay.concatMap(frame -> {
+                // A batch frame costs one token per event it holds
+                int events = Math.max(1, frame.count());
+                long waitNanos = Math.max(nodeBucket.reserve(events), connectionBucket.reserve(events));
+                replayed.increment(events);
+                if (waitNanos == 0) {
+                    return Mono.just(frame);
+                }
+                throttled.increment();
+                return Mono.delay(Duration.ofNanos(waitNanos), scheduler).thenReturn(frame);
+            }, 1);
+        }).subscribeOn(scheduler);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+}
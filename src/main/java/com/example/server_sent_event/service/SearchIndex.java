@@ -0,0 +1,264 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over the title and content of the in-memory history, ranked with BM25
+ * Each term keeps its postings as varint-encoded id deltas with the term frequency and document
+ * length, appended as news is published and trimmed from the front as the oldest news is
+ * evicted, both on the news log's writer thread. A search scores the postings of its terms
+ * document at a time and keeps the best k in a bounded min-heap
+ */
+final class SearchIndex implements NewsLog.Listener {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final NewsLog log;
+    private final Map<String, Postings> terms = new ConcurrentHashMap<>();
+
+    // Number of indexed news and sum of their lengths in terms, for the average document length
+    private volatile long documents;
+    private volatile long totalLength;
+
+    SearchIndex(NewsLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void appended(SseFrame frame) {
+        List<String> tokens = tokens(frame.getNews());
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        long id = frame.getId();
+        frequencies.forEach((term, frequency) ->
+                terms.computeIfAbsent(term, key -> new Postings()).add(id, frequency, tokens.size()));
+        totalLength += tokens.size();
+        documents++;
+    }
+
+    @Override
+    public void evicted(SseFrame frame) {
+        List<String> tokens = tokens(frame.getNews());
+        for (String term : new LinkedHashSet<>(tokens)) {
+            Postings postings = terms.get(term);
+            if (postings != null && postings.removeOldest(frame.getId())) {
+                terms.remove(term, postings);
+            }
+        }
+        totalLength -= tokens.size();
+        documents--;
+    }
+
+    private static List<String> tokens(News news) {
+        List<String> tokens = Tokenizer.terms(news.getTitle());
+        tokens.addAll(Tokenizer.terms(news.getContent()));
+        return tokens;
+    }
+
+    /**
+     * Up to k retained news matching any term of the query, best BM25 score first
+     */
+    List<SseFrame> search(String query, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        List<Cursor> cursors = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(Tokenizer.terms(query))) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                Cursor cursor = postings.cursor();
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+        long n = Math.max(1, documents);
+        double averageLength = Math.max(1.0, (double) totalLength / n);
+        for (Cursor cursor : cursors) {
+            cursor.idf = Math.log(1 + (n - cursor.documents + 0.5) / (cursor.documents + 0.5));
+        }
+
+        // Min-heap of the best k so far: a document only gets in by beating the weakest of them
+        PriorityQueue<Hit> best = new PriorityQueue<>(k + 1, Comparator.comparingDouble(Hit::score));
+        while (!cursors.isEmpty()) {
+            long id = Long.MAX_VALUE;
+            for (Cursor cursor : cursors) {
+                id = Math.min(id, cursor.id);
+            }
+            double score = 0;
+            for (int i = cursors.size() - 1; i >= 0; i--) {
+                Cursor cursor = cursors.get(i);
+                if (cursor.id == id) {
+                    double frequency = cursor.frequency;
+                    score += cursor.idf * frequency * (K1 + 1)
+                            / (frequency + K1 * (1 - B + B * cursor.length / averageLength));
+                    if (!cursor.advance()) {
+                        cursors.remove(i);
+                    }
+                }
+            }
+            if (best.size() < k) {
+                best.add(new Hit(id, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new Hit(id, score));
+            }
+        }
+
+        Hit[] ranked = best.toArray(new Hit[0]);
+        // Best first; equal scores favor the newer news
+        Arrays.sort(ranked, Comparator.comparingDouble(Hit::score).thenComparingLong(Hit::id).reversed());
+        List<SseFrame> results = new ArrayList<>(ranked.length);
+        for (Hit hit : ranked) {
+            SseFrame frame = log.find(hit.id());
+            if (frame != null) {
+                results.add(frame);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Number of distinct terms indexed
+     */
+    int termCount() {
+        return terms.size();
+    }
+
+    private record Hit(long id, double score) {
+    }
+
+    /**
+     * Postings of one term: entries of varint(id delta), varint(term frequency), varint(document length)
+     * Ids only grow at the tail and leave from the head, so the list stays sorted and delta encoded
+     */
+    private static final class Postings {
+
+        private byte[] data = new byte[16];
+        private int head;
+        private int tail;
+        // Id before the first entry, the base of its delta, and id of the last entry
+        private long headBase;
+        private long lastId;
+        private int documents;
+
+        synchronized void add(long id, int frequency, int length) {
+            ensureCapacity(3 * 10);
+            tail = writeVarint(tail, id - lastId);
+            tail = writeVarint(tail, frequency);
+            tail = writeVarint(tail, length);
+            lastId = id;
+            documents++;
+        }
+
+        /**
+         * Remove the entry of the id if it is the oldest; returns whether the postings are empty afterwards
+         */
+        synchronized boolean removeOldest(long id) {
+            if (head < tail) {
+                int position = head;
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                if (headBase + delta == id) {
+                    // Skip the frequency and length varints
+                    for (int varints = 0; varints < 2; position++) {
+                        if (data[position] >= 0) {
+                            varints++;
+                        }
+                    }
+                    head = position;
+                    headBase = id;
+                    documents--;
+                }
+            }
+            return head == tail;
+        }
+
+        synchronized Cursor cursor() {
+            return new Cursor(Arrays.copyOfRange(data, head, tail), headBase, documents);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (tail + needed <= data.length) {
+                return;
+            }
+            int size = tail - head;
+            byte[] target = (size + needed) * 2 > data.length ? new byte[(size + needed) * 2] : data;
+            System.arraycopy(data, head, target, 0, size);
+            data = target;
+            head = 0;
+            tail = size;
+        }
+
+        private int writeVarint(int position, long value) {
+            while ((value & ~0x7FL) != 0) {
+                data[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[position++] = (byte) value;
+            return position;
+        }
+    }
+
+    /**
+     * Forward-only reader over a copy of one term's postings
+     */
+    private static final class Cursor {
+
+        private final byte[] data;
+        private final int documents;
+        private int position;
+        private double idf;
+
+        long id;
+        int frequency;
+        int length;
+
+        Cursor(byte[] data, long base, int documents) {
+            this.data = data;
+            this.id = base;
+            this.documents = documents;
+        }
+
+        boolean advance() {
+            if (position >= data.length) {
+                return false;
+            }
+            id += readVarint();
+            frequency = (int) readVarint();
+            length = (int) readVarint();
+            return true;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
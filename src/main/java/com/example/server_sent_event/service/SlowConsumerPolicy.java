@@ -0,0 +1,40 @@
+package com.example.server_sent_event.service;
+
+/**
+ * What to do when a subscriber's bounded buffer is full because the client stopped reading
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Discard the oldest buffered frame to make room for the new one
+     */
+    DROP_OLDEST("drop_oldest"),
+
+    /**
+     * Discard the new frame and keep what is already buffered
+     */
+    DROP_NEWEST("drop_newest"),
+
+    /**
+     * Keep only the most recent frame; the client skips to the latest news once it catches up
+     */
+    COALESCE("coalesce"),
+
+    /**
+     * Close the connection after a retry: hint, so the client reconnects and resumes via Last-Event-ID
+     */
+    DISCONNECT("disconnect");
+
+    private final String tag;
+
+    SlowConsumerPolicy(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Metric tag naming the policy
+     */
+    public String tag() {
+        return tag;
+    }
+}
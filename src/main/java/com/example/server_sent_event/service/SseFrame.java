@@ -0,0 +1,155 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * A fully encoded Server-Sent Events frame
+ * News frames are encoded once on publish and the same immutable bytes are written to every
+ * subscriber and reused for replay; control frames carry comments or retry hints
+ * Frames read back from storage are views of the memory-mapped segment files and decode their
+ * news only when asked; a batch frame holds several consecutive news events in one write
+ */
+public final class SseFrame {
+
+    private static final int OBJECT_OVERHEAD = 128;
+
+    private final long firstId;
+    private final long lastId;
+    private final int count;
+    private final ByteBuffer bytes;
+
+    // Decodes the news of a stored frame on first access; null once decoded or for other frames
+    private final Function<ByteBuffer, News> decoder;
+    private volatile News news;
+
+    private SseFrame(News news, long firstId, long lastId, int count, ByteBuffer bytes, Function<ByteBuffer, News> decoder) {
+        this.news = news;
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.count = count;
+        this.bytes = bytes.asReadOnlyBuffer();
+        this.decoder = decoder;
+    }
+
+    /**
+     * Frame for a news item; the bytes must not be modified afterwards
+     */
+    public static SseFrame of(News news, byte[] bytes) {
+        return new SseFrame(news, news.getId(), news.getId(), 1, ByteBuffer.wrap(bytes), null);
+    }
+
+    /**
+     * Frame for a stored news item whose news is decoded from the bytes on first access
+     */
+    static SseFrame stored(long id, ByteBuffer bytes, Function<ByteBuffer, News> decoder) {
+        return new SseFrame(null, id, id, 1, bytes, decoder);
+    }
+
+    /**
+     * Frame holding the consecutive news events firstId..lastId, possibly separated by comment lines
+     */
+    static SseFrame batch(long firstId, long lastId, ByteBuffer bytes) {
+        return new SseFrame(null, firstId, lastId, (int) (lastId - firstId + 1), bytes, null);
+    }
+
+    /**
+     * Comment frame, ignored by clients
+     */
+    public static SseFrame comment(String text) {
+        return control(":" + text + "\n\n");
+    }
+
+    /**
+     * Frame telling the client how many milliseconds to wait before reconnecting
+     */
+    public static SseFrame retry(long millis) {
+        return control("retry:" + millis + "\n\n");
+    }
+
+    private static SseFrame control(String text) {
+        return new SseFrame(null, -1, -1, 0, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    /**
+     * The news carried by this frame, or null for a control or batch frame
+     */
+    public News getNews() {
+        News current = news;
+        if (current == null && decoder != null) {
+            current = decoder.apply(bytes.duplicate());
+            news = current;
+        }
+        return current;
+    }
+
+    /**
+     * Id of the (last) news carried by this frame, or -1 for a control frame
+     */
+    public long getId() {
+        return lastId;
+    }
+
+    /**
+     * Id of the first news carried by this frame, or -1 for a control frame
+     */
+    public long getFirstId() {
+        return firstId;
+    }
+
+    /**
+     * Number of news events in this frame; 0 for a control frame
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * The part of this frame with ids greater than the given id, or null if nothing is left
+     * Events end with a blank line and news JSON is a single line, so a batch is cut after the
+     * right number of "\n\n" separators without decoding anything
+     */
+    public SseFrame after(long id) {
+        if (id < firstId) {
+            return this;
+        }
+        if (id >= lastId) {
+            return null;
+        }
+        long skip = id - firstId + 1;
+        int position = bytes.position();
+        for (int i = position; i + 1 < bytes.limit() && skip > 0; i++) {
+            if (bytes.get(i) == '\n' && bytes.get(i + 1) == '\n') {
+                skip--;
+                position = ++i + 1;
+            }
+        }
+        ByteBuffer rest = bytes.duplicate().position(position);
+        return batch(id + 1, lastId, rest.slice());
+    }
+
+    /**
+     * Encoded length in bytes
+     */
+    public int size() {
+        return bytes.remaining();
+    }
+
+    /**
+     * Approximate heap retained by this frame and its news
+     */
+    public long retainedSize() {
+        // The decoded news holds roughly the same characters again as the encoded JSON
+        return OBJECT_OVERHEAD + 2L * bytes.remaining();
+    }
+
+    /**
+     * Read-only view of the encoded bytes, sharing the underlying array or mapped file
+     */
+    public ByteBuffer asByteBuffer() {
+        return bytes.duplicate();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes news into SSE frames, matching what the ServerSentEvent writer would produce
+ */
+@Component
+public class SseFrameEncoder {
+
+    private static final byte[] ID = "id:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EVENT = "\nevent:news\ndata:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final JsonMapper jsonMapper;
+
+    public SseFrameEncoder(JsonMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * Encode a news item as an "id:/event:news/data:" frame
+     * The JSON is written on a single line, so it always fits in one data field
+     */
+    public SseFrame encode(News news) {
+        byte[] json = jsonMapper.writeValueAsBytes(news);
+        byte[] id = ("id:" + news.getId()).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(id.length + EVENT.length + json.length + END.length);
+        out.writeBytes(id);
+        out.writeBytes(EVENT);
+        out.writeBytes(json);
+        out.writeBytes(END);
+        return SseFrame.of(news, out.toByteArray());
+    }
+
+    /**
+     * Wrap a frame produced by encode(News), such as one read back from storage, without copying it
+     * Only the id is parsed; the news is decoded from the bytes when first needed
+     */
+    public SseFrame stored(ByteBuffer encoded) {
+        long id = 0;
+        for (int i = encoded.position() + ID.length; i < encoded.limit(); i++) {
+            byte b = encoded.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            id = id * 10 + (b - '0');
+        }
+        return SseFrame.stored(id, encoded, this::decode);
+    }
+
+    /**
+     * Decode the news of a frame produced by encode(News)
+     */
+    public News decode(ByteBuffer encoded) {
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.duplicate().get(bytes);
+        int data = indexOf(bytes, EVENT);
+        if (data < 0 || bytes.length < data + EVENT.length + END.length) {
+            throw new IllegalArgumentException("Not a news frame");
+        }
+        int json = data + EVENT.length;
+        return jsonMapper.readValue(bytes, json, bytes.length - END.length - json, News.class);
+    }
+
+    /**
+     * The JSON of a frame produced by encode(News), as a view of the frame's bytes
+     */
+    public ByteBuffer json(ByteBuffer encoded) {
+        int end = encoded.limit() - END.length;
+        outer:
+        for (int i = encoded.position(); i + EVENT.length <= end; i++) {
+            for (int j = 0; j < EVENT.length; j++) {
+                if (encoded.get(i + j) != EVENT[j]) {
+                    continue outer;
+                }
+            }
+            return encoded.duplicate().position(i + EVENT.length).limit(end).slice();
+        }
+        throw new IllegalArgumentException("Not a news frame");
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index from keyword/category/author value to the subscribers interested in it
+ * A connection is indexed under its keywords if it has any, otherwise under its category values,
+ * otherwise under its author values, otherwise it receives everything; a publish only touches the
+ * matching postings and re-checks the remaining attributes on those candidates
+ * Keywords are not searched for here: the publish brings the ones the shared automaton found
+ */
+class SubscriptionIndex {
+
+    private final Set<NewsConnection> unfiltered = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<NewsConnection>> byCategory = new ConcurrentHashMap<>();
+    private final Map<String, Set<NewsConnection>> byAuthor = new ConcurrentHashMap<>();
+    private final Map<String, Set<NewsConnection>> byKeyword = new ConcurrentHashMap<>();
+
+    void add(NewsConnection connection) {
+        NewsFilter filter = connection.filter();
+        if (!filter.keywords().isEmpty()) {
+            filter.keywords().forEach(keyword -> add(byKeyword, keyword, connection));
+        } else if (!filter.categories().isEmpty()) {
+            filter.categories().forEach(category -> add(byCategory, category, connection));
+        } else if (!filter.authors().isEmpty()) {
+            filter.authors().forEach(author -> add(byAuthor, author, connection));
+        } else {
+            unfiltered.add(connection);
+        }
+    }
+
+    void remove(NewsConnection connection) {
+        NewsFilter filter = connection.filter();
+        if (!filter.keywords().isEmpty()) {
+            filter.keywords().forEach(keyword -> remove(byKeyword, keyword, connection));
+        } else if (!filter.categories().isEmpty()) {
+            filter.categories().forEach(category -> remove(byCategory, category, connection));
+        } else if (!filter.authors().isEmpty()) {
+            filter.authors().forEach(author -> remove(byAuthor, author, connection));
+        } else {
+            unfiltered.remove(connection);
+        }
+    }
+
+    /**
+     * Visit every connection whose filter matches the news item, each exactly once
+     * The keywords are those of all keyword subscriptions that occur in the news
+     */
+    void forEachMatch(News news, Set<String> keywords, Consumer<NewsConnection> action) {
+        unfiltered.forEach(action);
+        if (!keywords.isEmpty()) {
+            // A connection subscribed to several of the keywords found is only delivered to once
+            Set<NewsConnection> seen = keywords.size() > 1 ? new HashSet<>() : null;
+            for (String keyword : keywords) {
+                Set<NewsConnection> keywordPostings = byKeyword.get(keyword);
+                if (keywordPostings == null) {
+                    continue;
+                }
+                for (NewsConnection connection : keywordPostings) {
+                    if ((seen == null || seen.add(connection))
+                            && connection.filter().matchesCategory(news) && connection.filter().matchesAuthor(news)) {
+                        action.accept(connection);
+                    }
+                }
+            }
+        }
+        Set<NewsConnection> categoryPostings = byCategory.get(NewsFilter.key(news.getCategory()));
+        if (categoryPostings != null) {
+            for (NewsConnection connection : categoryPostings) {
+                if (connection.filter().matchesAuthor(news)) {
+                    action.accept(connection);
+                }
+            }
+        }
+        Set<NewsConnection> authorPostings = byAuthor.get(NewsFilter.key(news.getAuthor()));
+        if (authorPostings != null) {
+            authorPostings.forEach(action);
+        }
+    }
+
+    private static void add(Map<String, Set<NewsConnection>> index, String key, NewsConnection connection) {
+        index.compute(key, (k, postings) -> {
+            Set<NewsConnection> target = postings != null ? postings : ConcurrentHashMap.newKeySet();
+            target.add(connection);
+            return target;
+        });
+    }
+
+    private static void remove(Map<String, Set<NewsConnection>> index, String key, NewsConnection connection) {
+        index.computeIfPresent(key, (k, postings) -> {
+            postings.remove(connection);
+            return postings.isEmpty() ? null : postings;
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.server_sent_event.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its reservation form (generic cell rate algorithm)
+ * A reservation always succeeds and returns how long the caller has to wait before using the
+ * tokens; up to the burst size is available immediately after an idle period
+ */
+public final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+
+    // Theoretical arrival time: when the bucket would be full again if nothing else were reserved
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * A bucket refilling at the given tokens per second; a non-positive rate means unlimited
+     */
+    public TokenBucket(long tokensPerSecond, long burst) {
+        this.nanosPerToken = tokensPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / tokensPerSecond : 0;
+        this.burstNanos = Math.max(1, burst) * nanosPerToken;
+    }
+
+    /**
+     * Reserve tokens and return the number of nanoseconds to wait before using them
+     */
+    public long reserve(long tokens) {
+        if (nanosPerToken == 0) {
+            return 0;
+        }
+        long cost = tokens * nanosPerToken;
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long start = arrival == Long.MIN_VALUE || arrival - now < 0 ? now : arrival;
+            long next = start + cost;
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return Math.max(0, next - burstNanos - now);
+            }
+        }
+    }
+}
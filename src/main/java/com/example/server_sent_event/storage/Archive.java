@@ -0,0 +1,448 @@
+package com.example.server_sent_event.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier of the segment log: immutable, compressed archive files of retired segments
+ * Each retired segment becomes one file of deflate-compressed blocks of consecutive records,
+ * written to a temporary file, synced and renamed into place. A block holds the segment bytes
+ * unchanged, header lines included, so a decompressed block can be replayed as is
+ * Only the block index is kept in memory; a small LRU cache holds recently decompressed blocks
+ * Files beyond the size limit leave the index at once, but are only closed and deleted once
+ * the last reader loading a block from them is done
+ * Block layout: first id (long), record count (int), compressed length (int), raw length (int), data
+ */
+@Slf4j
+public class Archive implements Closeable {
+
+    private static final String SUFFIX = ".archive";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int BLOCK_HEADER = 20;
+
+    private final Path directory;
+    private final int blockRecords;
+    private final long maxBytes;
+
+    // Archive files and blocks by their first id
+    private final ConcurrentNavigableMap<Long, ArchiveFile> files = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Long, BlockRef> blocks = new ConcurrentSkipListMap<>();
+
+    // Recently decompressed blocks by first id, least recently used first
+    private final Map<Long, Block> cache;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong readFailures = new AtomicLong();
+
+    private volatile long lastId;
+    private volatile long totalBytes;
+
+    private Archive(Path directory, int blockRecords, int cacheBlocks, long maxBytes) {
+        this.directory = directory;
+        this.blockRecords = Math.max(1, blockRecords);
+        this.maxBytes = maxBytes;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                return size() > cacheBlocks;
+            }
+        });
+    }
+
+    /**
+     * Open or create the archive in the given directory
+     */
+    public static Archive open(Path directory, int blockRecords, int cacheBlocks, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        Archive archive = new Archive(directory, blockRecords, cacheBlocks, maxBytes);
+        List<Path> paths;
+        try (Stream<Path> listing = Files.list(directory)) {
+            paths = listing.sorted().toList();
+        }
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            if (name.endsWith(TEMPORARY_SUFFIX)) {
+                // An archive file that was never completed; its segment is still in the log
+                Files.delete(path);
+            } else if (name.endsWith(SUFFIX)) {
+                archive.load(path);
+            }
+        }
+        return archive;
+    }
+
+    private void load(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+        long position = 0;
+        long first = -1;
+        long last = -1;
+        while (position + BLOCK_HEADER <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            long firstId = header.getLong(0);
+            int count = header.getInt(8);
+            int compressed = header.getInt(12);
+            int raw = header.getInt(16);
+            if (count <= 0 || compressed <= 0 || raw <= 0 || position + BLOCK_HEADER + compressed > size) {
+                log.warn("Ignoring the rest of archive {} after a malformed block at {}", path, position);
+                break;
+            }
+            first = first < 0 ? firstId : first;
+            last = firstId + count - 1;
+            position += BLOCK_HEADER + compressed;
+        }
+        if (first < 0) {
+            channel.close();
+            return;
+        }
+        ArchiveFile file = new ArchiveFile(path, channel, first, last, size);
+        for (long p = 0; p < position; ) {
+            header.clear();
+            readFully(channel, header, p);
+            BlockRef block = new BlockRef(file, p, header.getLong(0), header.getInt(8), header.getInt(12),
+                    header.getInt(16));
+            blocks.put(block.firstId, block);
+            p += BLOCK_HEADER + block.compressed;
+        }
+        files.put(first, file);
+        lastId = Math.max(lastId, last);
+        totalBytes += size;
+    }
+
+    /**
+     * Compress a retired segment into a new archive file; does nothing for ids already archived
+     * Must only be called by one thread at a time
+     */
+    void add(Segment segment) throws IOException {
+        if (segment.count() == 0 || segment.lastId() <= lastId) {
+            return;
+        }
+        String name = String.format("%020d%s", segment.baseId(), SUFFIX);
+        Path target = directory.resolve(name);
+        Path temporary = directory.resolve(name + TEMPORARY_SUFFIX);
+        ByteBuffer records = segment.records();
+        Deflater deflater = new Deflater();
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long id = segment.baseId();
+            int position = 0;
+            while (position < records.limit()) {
+                int start = position;
+                int count = 0;
+                while (count < blockRecords && position < records.limit()) {
+                    position += Segment.HEADER + Segment.recordLength(records, position);
+                    count++;
+                }
+                byte[] raw = new byte[position - start];
+                records.get(start, raw);
+                byte[] compressed = deflate(deflater, raw);
+                ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER)
+                        .putLong(id).putInt(count).putInt(compressed.length).putInt(raw.length).flip();
+                out.write(header);
+                out.write(ByteBuffer.wrap(compressed));
+                id += count;
+            }
+            out.force(true);
+        } finally {
+            deflater.end();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+        load(target);
+        enforceRetention();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private void enforceRetention() {
+        while (totalBytes > maxBytes && files.size() > 1) {
+            ArchiveFile oldest = files.pollFirstEntry().getValue();
+            blocks.subMap(oldest.firstId, true, oldest.lastId, true).clear();
+            totalBytes -= oldest.size;
+            oldest.delete();
+            log.info("Retired archive {} beyond the archive limit of {} bytes", oldest.path, maxBytes);
+        }
+    }
+
+    /**
+     * Id of the oldest archived record, or 0 if the archive is empty
+     */
+    public long firstId() {
+        Map.Entry<Long, BlockRef> first = blocks.firstEntry();
+        return first == null ? 0 : first.getKey();
+    }
+
+    /**
+     * Id of the newest archived record, or 0 if the archive is empty
+     */
+    public long lastId() {
+        return lastId;
+    }
+
+    /**
+     * Bytes taken by the archive files
+     */
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    public long cacheHits() {
+        return cacheHits.get();
+    }
+
+    public long cacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Blocks that could not be read from their archive file
+     */
+    public long readFailures() {
+        return readFailures.get();
+    }
+
+    /**
+     * Read-only view of the payload with the given id, or null if it is not archived
+     */
+    ByteBuffer read(long id) {
+        Block block = block(id);
+        if (block == null) {
+            return null;
+        }
+        int position = block.offsets[(int) (id - block.firstId)];
+        return ByteBuffer.wrap(block.bytes, position + Segment.HEADER, Segment.recordLength(block.buffer, position))
+                .slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Consecutive records from the given id within one block, header lines included; null if not archived
+     * At most maxRecords records up to maxId and, unless it is a single record, at most maxBytes
+     */
+    RecordBatch batch(long fromId, long maxId, int maxRecords, int maxBytes) {
+        Block block = block(fromId);
+        if (block == null) {
+            return null;
+        }
+        long last = Math.min(Math.min(maxId, block.lastId()), fromId + maxRecords - 1);
+        int start = block.offsets[(int) (fromId - block.firstId)];
+        long end = fromId;
+        while (end < last && block.end(end + 1) - start <= maxBytes) {
+            end++;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(block.bytes, start, block.end(end) - start).slice().asReadOnlyBuffer();
+        return new RecordBatch(fromId, end, bytes);
+    }
+
+    private Block block(long id) {
+        Map.Entry<Long, BlockRef> entry = blocks.floorEntry(id);
+        if (entry == null || id >= entry.getKey() + entry.getValue().count) {
+            return null;
+        }
+        BlockRef ref = entry.getValue();
+        Block block = cache.get(ref.firstId);
+        if (block != null) {
+            cacheHits.incrementAndGet();
+            return block;
+        }
+        cacheMisses.incrementAndGet();
+        if (!ref.file.retain()) {
+            return null; // retired since the lookup
+        }
+        try {
+            block = ref.load();
+        } catch (IOException | DataFormatException e) {
+            readFailures.incrementAndGet();
+            log.warn("Cannot read archived block {} of {}: {}", ref.firstId, ref.file.path, e.getMessage());
+            return null;
+        } finally {
+            ref.file.release();
+        }
+        cache.put(ref.firstId, block);
+        return block;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive file");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ArchiveFile file : files.values()) {
+            file.release();
+        }
+    }
+
+    /**
+     * An open archive file, reference counted: the archive holds one reference until it retires
+     * or closes the file, and each block load holds one while it reads
+     */
+    private static final class ArchiveFile {
+        final Path path;
+        final FileChannel channel;
+        final long firstId;
+        final long lastId;
+        final long size;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile boolean deleted;
+
+        ArchiveFile(Path path, FileChannel channel, long firstId, long lastId, long size) {
+            this.path = path;
+            this.channel = channel;
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.size = size;
+        }
+
+        /**
+         * Take a reference for reading; false once the file has been released for good
+         */
+        boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                channel.close();
+                if (deleted) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to release archive {}: {}", path, e.getMessage());
+            }
+        }
+
+        /**
+         * Drop the archive's reference and delete the file once no reader holds one
+         */
+        void delete() {
+            deleted = true;
+            release();
+        }
+    }
+
+    /**
+     * Location of a compressed block
+     */
+    private static final class BlockRef {
+        final ArchiveFile file;
+        final long position;
+        final long firstId;
+        final int count;
+        final int compressed;
+        final int raw;
+
+        BlockRef(ArchiveFile file, long position, long firstId, int count, int compressed, int raw) {
+            this.file = file;
+            this.position = position;
+            this.firstId = firstId;
+            this.count = count;
+            this.compressed = compressed;
+            this.raw = raw;
+        }
+
+        Block load() throws IOException, DataFormatException {
+            ByteBuffer data = ByteBuffer.allocate(compressed);
+            readFully(file.channel, data, position + BLOCK_HEADER);
+            byte[] bytes = new byte[raw];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data.array());
+                int n = 0;
+                while (n < raw) {
+                    int inflated = inflater.inflate(bytes, n, raw - n);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new DataFormatException("Truncated block");
+                    }
+                    n += inflated;
+                }
+            } finally {
+                inflater.end();
+            }
+            return new Block(firstId, count, bytes);
+        }
+    }
+
+    /**
+     * A decompressed block with the position of each record
+     */
+    private static final class Block {
+        final long firstId;
+        final byte[] bytes;
+        final ByteBuffer buffer;
+        final int[] offsets;
+
+        Block(long firstId, int count, byte[] bytes) {
+            this.firstId = firstId;
+            this.bytes = bytes;
+            this.buffer = ByteBuffer.wrap(bytes);
+            this.offsets = new int[count];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+                position += Segment.HEADER + Segment.recordLength(buffer, position);
+            }
+        }
+
+        long lastId() {
+            return firstId + offsets.length - 1;
+        }
+
+        /**
+         * Position just past the record with the given id
+         */
+        int end(long id) {
+            int position = offsets[(int) (id - firstId)];
+            return position + Segment.HEADER + Segment.recordLength(buffer, position);
+        }
+    }
+}
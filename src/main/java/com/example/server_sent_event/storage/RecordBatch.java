@@ -0,0 +1,34 @@
+package com.example.server_sent_event.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Consecutive records read as one contiguous view of a segment file, header lines included
+ */
+public final class RecordBatch {
+
+    private final long firstId;
+    private final long lastId;
+    private final ByteBuffer bytes;
+
+    RecordBatch(long firstId, long lastId, ByteBuffer bytes) {
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.bytes = bytes;
+    }
+
+    public long firstId() {
+        return firstId;
+    }
+
+    public long lastId() {
+        return lastId;
+    }
+
+    /**
+     * Read-only view of the mapped file
+     */
+    public ByteBuffer bytes() {
+        return bytes;
+    }
+}
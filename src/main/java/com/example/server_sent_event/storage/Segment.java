@@ -0,0 +1,302 @@
+package com.example.server_sent_event.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * One fixed-size, memory-mapped segment file holding records with consecutive ids
+ * Each record starts with a header line ":<id> <crc> <length>\n" in fixed-width hex, the CRC32C
+ * covering id and payload. The header is an SSE comment, so when the payloads are SSE events any
+ * run of consecutive records is itself a valid event stream and can be written out as is
+ * The file is zero-filled when created, so a zero byte marks the end of the written part; the
+ * leading colon is written last, so a torn record is either invisible or fails its checksum
+ * The file starts with the line ":news-segment <version>\n", also an SSE comment; a file in any
+ * other format is refused rather than recovered, which would wipe it
+ */
+final class Segment {
+
+    static final int HEADER = 36;
+
+    // Format of the records; a change to their layout needs a new version
+    static final int VERSION = 1;
+    private static final byte[] MAGIC = ":news-segment ".getBytes(StandardCharsets.US_ASCII);
+    static final int FILE_HEADER = MAGIC.length + 3;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final String SUFFIX = ".segment";
+    private static final byte[] ZEROS = new byte[64 * 1024];
+
+    private final Path path;
+    private final long baseId;
+    private final MappedByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+
+    // offsets[id - baseId] is the record position; published to readers by the write to count
+    private volatile int[] offsets = new int[1024];
+    private volatile int count;
+
+    // Only touched by the writer
+    private int writePosition;
+
+    private Segment(Path path, long baseId, MappedByteBuffer buffer) {
+        this.path = path;
+        this.baseId = baseId;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create and map a new segment whose first record will have the given id
+     */
+    static Segment create(Path directory, long baseId, int size) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", baseId, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(path, baseId, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segment.writeFileHeader();
+            return segment;
+        }
+    }
+
+    /**
+     * Map an existing segment file; call recover() before using it
+     * Fails if the file is not a segment of the current version, leaving it untouched
+     */
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(path, baseId(path),
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.checkFormat();
+            return segment;
+        }
+    }
+
+    private void writeFileHeader() {
+        buffer.put(0, MAGIC);
+        writeHex(MAGIC.length, VERSION, 2);
+        buffer.put(FILE_HEADER - 1, (byte) '\n');
+        writePosition = FILE_HEADER;
+    }
+
+    private void checkFormat() throws IOException {
+        if (buffer.capacity() < FILE_HEADER) {
+            throw new IOException("Segment " + path + " is too short to hold a segment header");
+        }
+        if (isZeroFilled()) {
+            // Created, but the header never reached the disk: there is nothing to lose
+            writeFileHeader();
+            return;
+        }
+        if (buffer.mismatch(ByteBuffer.wrap(MAGIC)) != MAGIC.length || buffer.get(FILE_HEADER - 1) != '\n') {
+            throw new IOException("Segment " + path + " is not in a known segment format;"
+                    + " move it out of the way to start afresh");
+        }
+        long version = parseHex(buffer, MAGIC.length, 2);
+        if (version != VERSION) {
+            throw new IOException("Segment " + path + " has format version " + version
+                    + ", this version reads " + VERSION);
+        }
+    }
+
+    private boolean isZeroFilled() {
+        for (int position = 0; position < buffer.capacity(); position++) {
+            if (buffer.get(position) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isSegment(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    static long baseId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long baseId() {
+        return baseId;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Id of the last record, or baseId - 1 if the segment is empty
+     */
+    long lastId() {
+        return baseId + count - 1;
+    }
+
+    /**
+     * Index the valid records and wipe anything after them
+     * Returns false if a torn or corrupt record was found and discarded
+     */
+    boolean recover() {
+        int position = FILE_HEADER;
+        boolean intact = true;
+        while (position + HEADER <= buffer.capacity() && buffer.get(position) != 0) {
+            long id = parseHex(buffer, position + 1, 16);
+            long crcValue = parseHex(buffer, position + 18, 8);
+            long length = parseHex(buffer, position + 27, 8);
+            if (buffer.get(position) != ':' || buffer.get(position + HEADER - 1) != '\n' || id != baseId + count
+                    || length < 0 || position + HEADER + length > buffer.capacity()
+                    || checksum(id, buffer.slice(position + HEADER, (int) length)) != (int) crcValue) {
+                intact = false;
+                break;
+            }
+            index(position);
+            position += HEADER + (int) length;
+        }
+        writePosition = position;
+        if (!intact) {
+            for (int p = position; p < buffer.capacity(); p += ZEROS.length) {
+                buffer.put(p, ZEROS, 0, Math.min(ZEROS.length, buffer.capacity() - p));
+            }
+            buffer.force();
+        }
+        return intact;
+    }
+
+    /**
+     * Append the record with the next id; returns false if it does not fit
+     * Must only be called by one thread at a time
+     */
+    boolean append(long id, ByteBuffer payload) {
+        int length = payload.remaining();
+        int position = writePosition;
+        if (id != baseId + count || position + HEADER + length > buffer.capacity()) {
+            return false;
+        }
+        buffer.put(position + HEADER, payload, payload.position(), length);
+        writeHex(position + 1, id, 16);
+        buffer.put(position + 17, (byte) ' ');
+        writeHex(position + 18, checksum(id, payload) & 0xFFFFFFFFL, 8);
+        buffer.put(position + 26, (byte) ' ');
+        writeHex(position + 27, length, 8);
+        buffer.put(position + HEADER - 1, (byte) '\n');
+        buffer.put(position, (byte) ':');
+        writePosition = position + HEADER + length;
+        index(position);
+        return true;
+    }
+
+    private void writeHex(int position, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put(position + i, HEX[(int) (value & 0xF)]);
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * Payload length of the record at the given position of a buffer holding records
+     */
+    static int recordLength(ByteBuffer buffer, int position) {
+        return (int) parseHex(buffer, position + 27, 8);
+    }
+
+    /**
+     * Parse fixed-width lowercase hex; -1 if a character is not a hex digit
+     */
+    private static long parseHex(ByteBuffer buffer, int position, int digits) {
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            int b = buffer.get(position + i);
+            int digit = b >= '0' && b <= '9' ? b - '0' : b >= 'a' && b <= 'f' ? b - 'a' + 10 : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private void index(int position) {
+        int[] current = offsets;
+        int n = count;
+        if (n == current.length) {
+            current = Arrays.copyOf(current, n * 2);
+            offsets = current;
+        }
+        current[n] = position;
+        count = n + 1;
+    }
+
+    private int checksum(long id, ByteBuffer payload) {
+        crc.reset();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (id >>> shift));
+        }
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Read-only view of the payload with the given id, or null if this segment does not hold it
+     */
+    ByteBuffer read(long id) {
+        long index = id - baseId;
+        if (index < 0 || index >= count) {
+            return null;
+        }
+        int position = offsets[(int) index];
+        return buffer.slice(position + HEADER, recordEnd(position) - position - HEADER).asReadOnlyBuffer();
+    }
+
+    /**
+     * Id of the last record of a batch starting at the given id, so that the batch holds at most
+     * maxRecords records up to maxId and, unless it is a single record, at most maxBytes
+     */
+    long batchEnd(long fromId, long maxId, int maxRecords, int maxBytes) {
+        long last = Math.min(Math.min(maxId, lastId()), fromId + maxRecords - 1);
+        int[] current = offsets;
+        int start = current[(int) (fromId - baseId)];
+        long end = fromId;
+        while (end < last && recordEnd(current[(int) (end + 1 - baseId)]) - start <= maxBytes) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Read-only view of the records fromId..toId including their header lines
+     */
+    ByteBuffer slice(long fromId, long toId) {
+        int[] current = offsets;
+        int start = current[(int) (fromId - baseId)];
+        int end = recordEnd(current[(int) (toId - baseId)]);
+        return buffer.slice(start, end - start).asReadOnlyBuffer();
+    }
+
+    private int recordEnd(int position) {
+        return position + HEADER + recordLength(buffer, position);
+    }
+
+    /**
+     * Read-only view of every record in this segment, header lines included
+     */
+    ByteBuffer records() {
+        return count == 0 ? ByteBuffer.allocate(0) : slice(baseId, lastId());
+    }
+
+    /**
+     * Flush written pages to the storage device
+     */
+    void force() {
+        buffer.force();
+    }
+}
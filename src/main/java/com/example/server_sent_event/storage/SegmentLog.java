@@ -0,0 +1,536 @@
+package com.example.server_sent_event.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Durable append-only log of id-keyed records in fixed-size, memory-mapped segment files
+ * One writer appends records with increasing ids; any number of readers get read-only views of
+ * the mapped files, so reading history costs no heap beyond the views themselves
+ * A background thread group-commits: every fsync covers all records appended before it started,
+ * and completes every durability waiter up to that point at once
+ * On open, each segment is scanned and checksummed; a torn or corrupt tail is discarded
+ * Segments beyond the retained count are deleted, or with an archive compressed into it first;
+ * reads fall through to the archive for ids no longer in a segment
+ * Ids handed out ahead of a sync are reserved on disk in blocks first, so after a crash the
+ * ids of records that were lost, but may have been seen, are never handed out again
+ */
+@Slf4j
+public class SegmentLog implements Closeable {
+
+    private static final String RESERVED_IDS = "reserved-ids";
+    private static final long RESERVATION = 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long syncIntervalNanos;
+
+    // Segments by the id of their first record
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile Segment active;
+
+    // Last appended id, written by the appending thread only; 0 while the log is empty
+    private volatile long lastId;
+
+    // Last id known to be on the storage device
+    private volatile long durableId;
+
+    // Highest id reserved on disk, written by the appending thread only; 0 if nothing was reserved
+    private volatile long reservedId;
+
+    // Segments rolled over since the last sync, still to be flushed
+    private final Queue<Segment> sealed = new ConcurrentLinkedQueue<>();
+
+    // Durability waiters in id order, as they are only added by the appending thread
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private final Thread syncer;
+    private volatile boolean running = true;
+
+    // Cold tier for retired segments, with its own thread; both null without an archive
+    private final Archive archive;
+    private final ExecutorService archiver;
+
+    // Whether an archiving pass is queued and has not started yet
+    private final AtomicBoolean archiveScheduled = new AtomicBoolean();
+
+    private SegmentLog(Path directory, int segmentSize, int maxSegments, Duration syncInterval, Archive archive) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.syncIntervalNanos = syncInterval.toNanos();
+        this.syncer = Thread.ofPlatform().name("news-fsync").daemon().unstarted(this::syncLoop);
+        this.archive = archive;
+        this.archiver = archive == null ? null
+                : Executors.newSingleThreadExecutor(
+                        task -> Thread.ofPlatform().name("news-archive").daemon().unstarted(task));
+    }
+
+    /**
+     * Open or create the log in the given directory, recovering what was written before
+     */
+    public static SegmentLog open(Path directory, int segmentSize, int maxSegments, Duration syncInterval)
+            throws IOException {
+        return open(directory, segmentSize, maxSegments, syncInterval, null);
+    }
+
+    /**
+     * Open or create the log, compressing segments beyond maxSegments into the given archive,
+     * which is closed with the log
+     */
+    public static SegmentLog open(Path directory, int segmentSize, int maxSegments, Duration syncInterval,
+                                  Archive archive) throws IOException {
+        Files.createDirectories(directory);
+        SegmentLog segmentLog = new SegmentLog(directory, segmentSize, maxSegments, syncInterval, archive);
+        segmentLog.recover();
+        segmentLog.retireOldSegments();
+        segmentLog.syncer.start();
+        return segmentLog;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(Segment::isSegment)
+                    .sorted((a, b) -> Long.compare(Segment.baseId(a), Segment.baseId(b)))
+                    .toList();
+        }
+        Path reserved = directory.resolve(RESERVED_IDS);
+        if (Files.exists(reserved)) {
+            String text = Files.readString(reserved, StandardCharsets.US_ASCII).trim();
+            try {
+                reservedId = Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw new IOException("Reserved id file " + reserved + " is corrupt: " + text, e);
+            }
+        }
+        boolean discardRest = false;
+        for (Path file : files) {
+            if (discardRest) {
+                log.warn("Deleting segment {} written after a corrupt record", file);
+                Files.delete(file);
+                continue;
+            }
+            Segment segment = Segment.open(file);
+            if (!segment.recover()) {
+                log.warn("Discarded a torn or corrupt record in {} after id {}", file, segment.lastId());
+                discardRest = true;
+            }
+            segments.put(segment.baseId(), segment);
+            active = segment;
+            if (segment.count() > 0) {
+                lastId = segment.lastId();
+            }
+        }
+        durableId = lastId;
+    }
+
+    /**
+     * Append a record; ids must increase, and a gap in the ids starts a new segment
+     * Must only be called by one thread at a time
+     */
+    public void append(long id, ByteBuffer payload) {
+        if (id <= lastId) {
+            throw new IllegalArgumentException("Id " + id + " is not after the last id " + lastId);
+        }
+        if (Segment.FILE_HEADER + Segment.HEADER + payload.remaining() > segmentSize) {
+            throw new IllegalArgumentException("Record of " + payload.remaining() + " bytes does not fit in a segment");
+        }
+        Segment segment = active;
+        if (segment == null || !segment.append(id, payload)) {
+            segment = roll(id);
+            segment.append(id, payload);
+        }
+        lastId = id;
+    }
+
+    private Segment roll(long baseId) {
+        try {
+            Segment segment = Segment.create(directory, baseId, segmentSize);
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                dir.force(true);
+            }
+            Segment previous = active;
+            if (previous != null) {
+                sealed.add(previous);
+            }
+            segments.put(baseId, segment);
+            active = segment;
+            retireOldSegments();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create segment " + baseId + " in " + directory, e);
+        }
+    }
+
+    /**
+     * Delete, or hand over to the archive thread, the oldest segments beyond the retained count
+     */
+    private void retireOldSegments() throws IOException {
+        if (archive != null) {
+            if (segments.size() > maxSegments && archiveScheduled.compareAndSet(false, true)) {
+                archiver.execute(this::archiveOldSegments);
+            }
+            return;
+        }
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active) {
+                return;
+            }
+            segments.remove(oldest.baseId(), oldest);
+            Files.deleteIfExists(oldest.path());
+            log.info("Deleted segment {} beyond the retention of {} segments", oldest.path(), maxSegments);
+        }
+    }
+
+    /**
+     * Archive and then delete the oldest segments beyond the retained count, oldest first
+     * A segment stays readable until its archive file is in place; one that fails to archive is
+     * kept, stops the pass so no newer segment is archived before it, and is retried on the next roll
+     */
+    private void archiveOldSegments() {
+        archiveScheduled.set(false);
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active || !archive(oldest)) {
+                return;
+            }
+        }
+    }
+
+    private boolean archive(Segment segment) {
+        try {
+            // Make sure the archive is built from what is on disk, not from pages that may never get there
+            segment.force();
+            archive.add(segment);
+            segments.remove(segment.baseId(), segment);
+            Files.deleteIfExists(segment.path());
+            log.info("Archived segment {} with news {}..{}", segment.path(), segment.baseId(), segment.lastId());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to archive segment {}, keeping it for the next attempt: {}", segment.path(),
+                    e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Completes once the record with the given id, and everything before it, is on the storage device
+     */
+    public Mono<Void> awaitDurable(long id) {
+        if (id <= durableId) {
+            return Mono.empty();
+        }
+        if (!running) {
+            return Mono.error(new IllegalStateException("Segment log is closed"));
+        }
+        Waiter waiter = new Waiter(id);
+        waiters.add(waiter);
+        LockSupport.unpark(syncer);
+        return waiter.done.asMono();
+    }
+
+    private void syncLoop() {
+        while (running || !waiters.isEmpty()) {
+            if (waiters.isEmpty()) {
+                LockSupport.parkNanos(this, syncIntervalNanos);
+            }
+            sync();
+        }
+        sync();
+    }
+
+    private void sync() {
+        long target = lastId;
+        if (target > durableId) {
+            try {
+                // Read the active segment first: a segment rolled over after that is already in the sealed queue
+                Segment current = active;
+                Segment segment;
+                while ((segment = sealed.poll()) != null) {
+                    segment.force();
+                }
+                current.force();
+                durableId = target;
+            } catch (UncheckedIOException e) {
+                log.error("Failed to sync news segments: {}", e.getMessage(), e);
+                Waiter waiter;
+                while ((waiter = waiters.peek()) != null && waiter.id <= target) {
+                    waiters.poll().done.tryEmitError(e);
+                }
+                return;
+            }
+        }
+        long durable = durableId;
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null && waiter.id <= durable) {
+            waiters.poll().done.tryEmitEmpty();
+        }
+    }
+
+    /**
+     * Read-only view of the record with the given id, or null if it is not retained
+     */
+    public ByteBuffer read(long id) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(id);
+        ByteBuffer record = entry == null ? null : entry.getValue().read(id);
+        return record == null && archive != null ? archive.read(id) : record;
+    }
+
+    /**
+     * Records with an id greater than the given id, up to the last id at the time of the call
+     * Ids missing from the log, or from segments deleted while iterating, are skipped
+     */
+    public Iterable<ByteBuffer> after(long id) {
+        long end = lastId;
+        return () -> new RecordIterator<>(id + 1, end) {
+            @Override
+            ByteBuffer read(Segment segment, long from) {
+                next = from + 1;
+                return segment.read(from);
+            }
+
+            @Override
+            ByteBuffer readArchived(long from) {
+                next = from + 1;
+                return archive.read(from);
+            }
+        };
+    }
+
+    /**
+     * Like after(long), but in batches of consecutive records from the same segment, each one
+     * contiguous view of the mapped file holding at most maxRecords records and, unless it is a
+     * single record, at most maxBytes bytes
+     */
+    public Iterable<RecordBatch> batchesAfter(long id, int maxRecords, int maxBytes) {
+        long end = lastId;
+        return () -> new RecordIterator<>(id + 1, end) {
+            @Override
+            RecordBatch read(Segment segment, long from) {
+                long to = segment.batchEnd(from, end, maxRecords, maxBytes);
+                next = to + 1;
+                return new RecordBatch(from, to, segment.slice(from, to));
+            }
+
+            @Override
+            RecordBatch readArchived(long from) {
+                RecordBatch batch = archive.batch(from, end, maxRecords, maxBytes);
+                next = batch == null ? from + 1 : batch.lastId() + 1;
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Walks the retained segments, and the archive below them, from one id up to an end id,
+     * skipping missing ids
+     */
+    private abstract class RecordIterator<T> implements Iterator<T> {
+
+        private final long end;
+        long next;
+        private T current;
+
+        RecordIterator(long next, long end) {
+            this.next = next;
+            this.end = end;
+        }
+
+        /**
+         * Read from the given id, which the segment holds, and advance next past what was read
+         */
+        abstract T read(Segment segment, long from);
+
+        /**
+         * Read from the given id, which may be archived, and advance next past what was read
+         */
+        abstract T readArchived(long from);
+
+        @Override
+        public boolean hasNext() {
+            while (current == null && next <= end) {
+                Map.Entry<Long, Segment> entry = segments.floorEntry(next);
+                if (entry != null && next <= entry.getValue().lastId()) {
+                    current = read(entry.getValue(), next);
+                    continue;
+                }
+                // Segments are archived before they are removed, so an id no longer in one is in the archive
+                if (archive != null && next >= archive.firstId() && next <= archive.lastId()) {
+                    current = readArchived(next);
+                    continue;
+                }
+                long following = Long.MAX_VALUE;
+                Long segmentId = segments.higherKey(next);
+                if (segmentId != null) {
+                    following = segmentId;
+                }
+                if (archive != null && archive.firstId() > next) {
+                    following = Math.min(following, archive.firstId());
+                }
+                if (following == Long.MAX_VALUE) {
+                    return false;
+                }
+                next = following;
+            }
+            return current != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = current;
+            current = null;
+            return result;
+        }
+    }
+
+    /**
+     * Id of the oldest retained record, or 0 if the log is empty
+     */
+    public long firstId() {
+        if (archive != null && archive.firstId() > 0) {
+            return archive.firstId();
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.count() > 0) {
+                return segment.baseId();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Id of the last appended record, or 0 if the log is empty
+     */
+    public long lastId() {
+        return lastId;
+    }
+
+    /**
+     * Highest id that may have been handed out before: the last record's, or a reserved one above it
+     */
+    public long reservedId() {
+        return Math.max(reservedId, lastId);
+    }
+
+    /**
+     * Reserve ids up to the given one before handing it out ahead of its sync, so that recovery
+     * continues above it; writes to disk once per block of ids
+     * Must only be called by the appending thread
+     */
+    public void reserve(long id) {
+        if (id <= reservedId) {
+            return;
+        }
+        try {
+            writeReservedId(id + RESERVATION - 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot reserve ids in " + directory, e);
+        }
+    }
+
+    private void writeReservedId(long id) throws IOException {
+        Path temp = directory.resolve(RESERVED_IDS + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(id).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(RESERVED_IDS), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+        reservedId = id;
+    }
+
+    /**
+     * Id of the last record known to be on the storage device
+     */
+    public long durableId() {
+        return durableId;
+    }
+
+    /**
+     * Number of retained segment files
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Sync everything appended so far, finish archiving and stop the background threads
+     */
+    @Override
+    public void close() {
+        if (archiver != null) {
+            archiver.shutdown();
+            try {
+                archiver.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            archive.close();
+        }
+        running = false;
+        LockSupport.unpark(syncer);
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.done.tryEmitError(new IllegalStateException("Segment log is closed"));
+        }
+        if (reservedId > lastId && durableId == lastId) {
+            // Everything handed out is on disk: the next run can continue right after it
+            try {
+                writeReservedId(lastId);
+            } catch (IOException e) {
+                log.warn("Cannot release reserved ids in {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final long id;
+        final Sinks.Empty<Void> done = Sinks.empty();
+
+        Waiter(long id) {
+            this.id = id;
+        }
+    }
+}
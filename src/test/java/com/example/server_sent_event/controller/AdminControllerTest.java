@@ -0,0 +1,100 @@
+package com.example.server_sent_event.controller;
+
+import com.example.server_sent_event.model.ConnectionInfo;
+import com.example.server_sent_event.service.NewsFilter;
+import com.example.server_sent_event.service.NewsService;
+import com.example.server_sent_event.service.SseFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdminControllerTest {
+
+    private NewsServiceFixture fixture;
+    private NewsService newsService;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new NewsServiceFixture();
+        newsService = fixture.newsService;
+        client = WebTestClient.bindToController(new AdminController(newsService)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    void listsOpenConnectionsWithTheirDeliveryStatistics() throws InterruptedException {
+        assertThat(connections()).isEmpty();
+
+        Disposable reading = newsService.getNewsFrames(null, NewsFilter.NONE, "10.0.0.1").subscribe();
+        // A client that never reads: the published news stays in its buffer
+        BaseSubscriber<SseFrame> stalled = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+        };
+        newsService.getNewsFrames(null, NewsFilter.NONE, "10.0.0.2").subscribe(stalled);
+        newsService.addNews("Breaking", "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+
+        // Both seeded news are replayed and the new one delivered live
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Map<String, ConnectionInfo> byAddress = byAddress();
+        while ((byAddress.get("10.0.0.1").getEventsSent() < 3 || byAddress.get("10.0.0.2").getBufferDepth() < 1)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            byAddress = byAddress();
+        }
+
+        ConnectionInfo active = byAddress.get("10.0.0.1");
+        assertThat(active.getEventsSent()).isEqualTo(3);
+        assertThat(active.getBytesSent()).isPositive();
+        assertThat(active.getLastWriteTime()).isNotNull();
+        assertThat(active.getBufferDepth()).isZero();
+        ConnectionInfo idle = byAddress.get("10.0.0.2");
+        assertThat(idle.getEventsSent()).isZero();
+        assertThat(idle.getLastWriteTime()).isNull();
+        assertThat(idle.getBufferDepth()).isEqualTo(1);
+        assertThat(idle.getConnectedAt()).isNotNull();
+        assertThat(idle.getId()).isNotEqualTo(active.getId());
+
+        reading.dispose();
+        stalled.dispose();
+        while (!connections().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(connections()).isEmpty();
+    }
+
+    private List<ConnectionInfo> connections() {
+        return client.get()
+                .uri("/admin/connections")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ConnectionInfo.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private Map<String, ConnectionInfo> byAddress() {
+        List<ConnectionInfo> connections = connections();
+        assertThat(connections).hasSize(2);
+        return connections.stream().collect(Collectors.toMap(ConnectionInfo::getRemoteAddress, Function.identity()));
+    }
+}
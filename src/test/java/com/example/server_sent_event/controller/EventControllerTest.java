@@ -0,0 +1,285 @@
+package com.example.server_sent_event.controller;
+
+import com.example.server_sent_event.model.News;
+import com.example.server_sent_event.service.AdmissionControl;
+import com.example.server_sent_event.service.NewsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventControllerTest {
+
+    private NewsServiceFixture fixture;
+    private NewsService newsService;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new NewsServiceFixture();
+        newsService = fixture.newsService;
+        client = WebTestClient.bindToController(new EventController(newsService,
+                new AdmissionControl(fixture.properties, fixture.meterRegistry), fixture.properties)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    void concurrentPostsAreNeitherLostNorDuplicated() throws Exception {
+        int clients = 16;
+        int postsPerClient = 100;
+        int total = clients * postsPerClient;
+        int seeded = window().size();
+
+        Set<Long> live = ConcurrentHashMap.newKeySet();
+        CountDownLatch allLive = new CountDownLatch(total);
+        Disposable subscription = newsService.getNewsStream((long) seeded)
+                .subscribe(news -> {
+                    if (live.add(news.getId())) {
+                        allLive.countDown();
+                    }
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        ConcurrentLinkedQueue<Long> acknowledged = new ConcurrentLinkedQueue<>();
+        List<Future<?>> results = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < postsPerClient; i++) {
+                    News news = client.post().uri("/news")
+                            .bodyValue(Map.of("title", "t", "content", "c", "category", "Technology", "author", "a"))
+                            .exchange()
+                            .expectStatus().isOk()
+                            .expectBody(News.class)
+                            .returnResult()
+                            .getResponseBody();
+                    acknowledged.add(news.getId());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertThat(allLive.await(10, TimeUnit.SECONDS)).isTrue();
+        subscription.dispose();
+
+        assertThat(acknowledged).hasSize(total).doesNotHaveDuplicates();
+        List<News> history = window();
+        assertThat(history).hasSize(seeded + total);
+        assertThat(history).extracting(News::getId).isSorted().doesNotHaveDuplicates();
+        assertThat(live).containsExactlyInAnyOrderElementsOf(acknowledged);
+    }
+
+    @Test
+    void replaysOnlyNewsAfterLastEventId() {
+        newsService.addNews("third", "c", "Sports", "a").block(Duration.ofSeconds(5));
+
+        List<News> replayed = newsService.getNewsStream(2L).take(1).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(replayed).extracting(News::getTitle).containsExactly("third");
+    }
+
+    @Test
+    void pagesThroughNewsWithAfterAndLimit() {
+        for (int i = 0; i < 8; i++) {
+            newsService.addNews("news " + i, "c", "Sports", "a").block(Duration.ofSeconds(5));
+        }
+
+        List<News> firstPage = client.get().uri("/news?limit=4")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+        List<News> secondPage = client.get().uri("/news?after={after}&limit=4", firstPage.get(3).getId())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(News.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        List<News> everything = client.get().uri("/news")
+                .exchange()
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+
+        // The two news the service starts with come first
+        assertThat(firstPage).extracting(News::getTitle).containsExactly(
+                "Welcome to News Broadcasting", "Spring Boot WebFlux SSE Implementation", "news 0", "news 1");
+        assertThat(firstPage).extracting(News::getId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(secondPage).extracting(News::getId).containsExactly(5L, 6L, 7L, 8L);
+        assertThat(everything).extracting(News::getId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        client.get().uri("/news?limit=0").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    void conditionalGetIsAnsweredFromTheCachedSnapshotUntilTheNextPublish() throws Exception {
+        String eTag = client.get().uri("/news")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(byte[].class)
+                .getResponseHeaders()
+                .getETag();
+
+        client.get().uri("/news").ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        byte[] gzipped = client.get().uri("/news").header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            List<News> news = JsonMapper.builder().build().readValue(in.readAllBytes(), new TypeReference<List<News>>() {});
+            assertThat(news).hasSize(window().size());
+        }
+
+        newsService.addNews("fresh", "c", "Sports", "a").block(Duration.ofSeconds(5));
+
+        List<News> news = client.get().uri("/news").ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.ETAG, tag -> assertThat(tag).isNotEqualTo(eTag))
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(news).last().extracting(News::getTitle).isEqualTo("fresh");
+    }
+
+    @Test
+    void looksUpNewsByIdAndByListOfIds() {
+        News added = newsService.addNews("wanted", "c", "Sports", "a").block(Duration.ofSeconds(5));
+
+        client.get().uri("/news/{id}", added.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(News.class)
+                .value(news -> assertThat(news.getTitle()).isEqualTo("wanted"));
+        client.get().uri("/news/{id}", 999_999)
+                .exchange()
+                .expectStatus().isNotFound();
+
+        List<News> found = client.get().uri("/news?ids={ids}", added.getId() + ",999999,1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(found).extracting(News::getId).containsExactly(added.getId(), 1L);
+    }
+
+    @Test
+    void queriesRecentNewsByCategoryAndPublishTime() {
+        LocalDateTime before = LocalDateTime.now().minusSeconds(1);
+        newsService.addNews("match", "c", "Sports", "a").block(Duration.ofSeconds(5));
+        newsService.addNews("gadget", "c", "Technology", "a").block(Duration.ofSeconds(5));
+        newsService.addNews("final", "c", "Sports", "b").block(Duration.ofSeconds(5));
+
+        List<News> sports = client.get()
+                .uri(uri -> uri.path("/news")
+                        .queryParam("category", "sports")
+                        .queryParam("from", before.withNano(0).toString())
+                        .queryParam("limit", 1)
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+        List<News> technology = client.get().uri("/news?category=Technology")
+                .exchange()
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(sports).extracting(News::getTitle).containsExactly("match");
+        assertThat(technology).extracting(News::getTitle)
+                .containsExactly("Welcome to News Broadcasting", "Spring Boot WebFlux SSE Implementation", "gadget");
+    }
+
+    @Test
+    void searchesTitlesAndContentByKeyword() {
+        newsService.addNews("Rocket launch delayed", "Engineers found a fault", "Science", "a").block(Duration.ofSeconds(5));
+        newsService.addNews("Harbour reopens", "Launch of the new ferry line", "Local", "b").block(Duration.ofSeconds(5));
+
+        List<News> hits = client.get().uri("/news/search?q={q}", "rocket launch")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(News.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(hits).extracting(News::getTitle).containsExactly("Rocket launch delayed", "Harbour reopens");
+        client.get().uri("/news/search?q=rocket&limit=0").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    void capsConnectionsPerClientNamedByTheConfiguredHeaderAndReleasesThemOnCancel() {
+        fixture.properties.getAdmission().setClientHeader("X-Forwarded-For");
+        fixture.properties.getAdmission().setMaxConnectionsPerClient(1);
+        fixture.properties.getAdmission().setMaxCpuLoad(Double.MAX_VALUE);
+        fixture.properties.getAdmission().setMaxHeapUsage(Double.MAX_VALUE);
+        WebTestClient proxied = WebTestClient.bindToController(new EventController(newsService,
+                new AdmissionControl(fixture.properties, fixture.meterRegistry), fixture.properties)).build();
+
+        // All requests come from the same balancer; only the header tells the clients apart
+        Flux<String> first = subscribe(proxied, "203.0.113.1, 10.0.0.1").expectStatus().isOk()
+                .returnResult(String.class).getResponseBody();
+        Flux<String> other = subscribe(proxied, "203.0.113.2").expectStatus().isOk()
+                .returnResult(String.class).getResponseBody();
+        subscribe(proxied, "203.0.113.1").expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        // Cancelling the stream gives the slot back
+        first.take(1).blockLast(Duration.ofSeconds(5));
+        other.take(1).blockLast(Duration.ofSeconds(5));
+        subscribe(proxied, "203.0.113.1").expectStatus().isOk()
+                .returnResult(String.class).getResponseBody().take(1).blockLast(Duration.ofSeconds(5));
+    }
+
+    private static WebTestClient.ResponseSpec subscribe(WebTestClient client, String forwardedFor) {
+        return client.get().uri("/news/subscribe")
+                .header("X-Forwarded-For", forwardedFor)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange();
+    }
+
+    private List<News> window() {
+        return newsService.getNews(null, null).collectList().block(Duration.ofSeconds(5));
+    }
+}
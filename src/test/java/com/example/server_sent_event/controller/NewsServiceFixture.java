@@ -0,0 +1,49 @@
+package com.example.server_sent_event.controller;
+
+import com.example.server_sent_event.config.NewsProperties;
+import com.example.server_sent_event.service.ConnectionRegistry;
+import com.example.server_sent_event.service.HeartbeatScheduler;
+import com.example.server_sent_event.service.NewsBroadcaster;
+import com.example.server_sent_event.service.NewsService;
+import com.example.server_sent_event.service.NewsStore;
+import com.example.server_sent_event.service.ReplayPacer;
+import com.example.server_sent_event.service.SseFrameEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * A NewsService without storage and everything it runs on, for controller tests
+ * close() stops all of it, including the timer and scheduler threads
+ */
+final class NewsServiceFixture implements AutoCloseable {
+
+    final NewsProperties properties = new NewsProperties();
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final NewsService newsService;
+
+    private final NewsBroadcaster broadcaster;
+    private final HeartbeatScheduler heartbeats;
+    private final ReplayPacer replayPacer;
+    private final NewsStore store;
+
+    NewsServiceFixture() {
+        properties.getStorage().setEnabled(false);
+        ConnectionRegistry registry = new ConnectionRegistry();
+        SseFrameEncoder encoder = new SseFrameEncoder(JsonMapper.builder().build());
+        broadcaster = new NewsBroadcaster(properties, meterRegistry, registry);
+        heartbeats = new HeartbeatScheduler(properties, meterRegistry);
+        replayPacer = new ReplayPacer(properties, meterRegistry);
+        store = new NewsStore(properties, encoder);
+        newsService = new NewsService(properties, meterRegistry, encoder, broadcaster, registry, heartbeats,
+                replayPacer, store);
+    }
+
+    @Override
+    public void close() {
+        newsService.cleanup();
+        broadcaster.shutdown();
+        heartbeats.shutdown();
+        replayPacer.shutdown();
+        store.close();
+    }
+}
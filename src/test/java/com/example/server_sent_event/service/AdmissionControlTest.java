@@ -0,0 +1,53 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+
+    private static AdmissionControl admissionControl(int maxConnections, int maxPerClient) {
+        NewsProperties properties = new NewsProperties();
+        properties.getAdmission().setMaxConnections(maxConnections);
+        properties.getAdmission().setMaxConnectionsPerClient(maxPerClient);
+        properties.getAdmission().setMaxCpuLoad(Double.MAX_VALUE);
+        properties.getAdmission().setMaxHeapUsage(Double.MAX_VALUE);
+        properties.getAdmission().setRetryJitter(Duration.ofSeconds(2));
+        return new AdmissionControl(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void capsConnectionsPerClientAndReleasesSlots() {
+        AdmissionControl control = admissionControl(10, 2);
+
+        AdmissionControl.Admission first = control.tryAdmit("10.0.0.1");
+        AdmissionControl.Admission second = control.tryAdmit("10.0.0.1");
+        AdmissionControl.Admission third = control.tryAdmit("10.0.0.1");
+
+        assertThat(first.isAdmitted()).isTrue();
+        assertThat(second.isAdmitted()).isTrue();
+        assertThat(third.getRejection()).isEqualTo(AdmissionControl.Rejection.CLIENT_LIMIT);
+        assertThat(third.getRetryAfterMillis()).isBetween(5_000L, 7_000L);
+        assertThat(control.tryAdmit("10.0.0.2").isAdmitted()).isTrue();
+
+        first.release();
+        first.release();
+        assertThat(control.tryAdmit("10.0.0.1").isAdmitted()).isTrue();
+        assertThat(control.tryAdmit("10.0.0.1").isAdmitted()).isFalse();
+    }
+
+    @Test
+    void capsConnectionsPerNodeAndRefusesWhileDraining() {
+        AdmissionControl control = admissionControl(1, 10);
+
+        assertThat(control.tryAdmit("10.0.0.1").isAdmitted()).isTrue();
+        assertThat(control.tryAdmit("10.0.0.2").getRejection()).isEqualTo(AdmissionControl.Rejection.NODE_LIMIT);
+
+        control.startDraining();
+        assertThat(control.tryAdmit("10.0.0.3").getRejection()).isEqualTo(AdmissionControl.Rejection.DRAINING);
+    }
+}
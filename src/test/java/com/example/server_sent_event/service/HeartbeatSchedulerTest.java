@@ -0,0 +1,102 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeartbeatSchedulerTest {
+
+    private static final Duration INTERVAL = Duration.ofMillis(50);
+    private static final Duration WRITE_TIMEOUT = Duration.ofMillis(200);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HeartbeatScheduler scheduler = new HeartbeatScheduler(properties(), meterRegistry);
+
+    private static NewsProperties properties() {
+        NewsProperties properties = new NewsProperties();
+        properties.getHeartbeat().setInterval(INTERVAL);
+        properties.getHeartbeat().setWriteTimeout(WRITE_TIMEOUT);
+        properties.getHeartbeat().setTick(Duration.ofMillis(10));
+        return properties;
+    }
+
+    private NewsConnection connection() {
+        return new NewsConnection(1, "10.0.0.1", 0, NewsFilter.NONE, SlowConsumerPolicy.DROP_OLDEST, 16, 1000,
+                meterRegistry.counter("dropped"), meterRegistry.counter("disconnected"));
+    }
+
+    @AfterEach
+    void stopTimer() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void reapsAConnectionWhoseWritesStall() throws InterruptedException {
+        NewsConnection connection = connection();
+        AtomicBoolean completed = new AtomicBoolean();
+        // A client that never reads: whatever is offered stays pending
+        connection.output(connection.frames()).subscribe(new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                completed.set(true);
+            }
+        });
+        connection.offer(NewsLogTest.ENCODER.encode(
+                new News(1L, "stuck", "content", LocalDateTime.now(), "Technology", "Tester")));
+        assertThat(connection.pendingWrites()).isEqualTo(1);
+
+        long start = System.nanoTime();
+        scheduler.watch(connection);
+
+        awaitTrue(connection::isClosed);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(WRITE_TIMEOUT.toNanos() - INTERVAL.toNanos());
+        awaitTrue(completed::get);
+        assertThat(meterRegistry.get("news.subscriber.reaped").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("news.subscriber.heartbeats").counter().count()).isZero();
+    }
+
+    @Test
+    void heartbeatsAnIdleConnectionThatKeepsReading() throws InterruptedException {
+        NewsConnection connection = connection();
+        AtomicInteger heartbeats = new AtomicInteger();
+        connection.output(connection.frames()).subscribe(frame -> {
+            if (frame == HeartbeatScheduler.HEARTBEAT) {
+                heartbeats.incrementAndGet();
+            }
+        });
+
+        scheduler.watch(connection);
+
+        awaitTrue(() -> heartbeats.get() >= 3);
+        Thread.sleep(WRITE_TIMEOUT.toMillis());
+        assertThat(connection.isClosed()).isFalse();
+        assertThat(meterRegistry.get("news.subscriber.reaped").counter().count()).isZero();
+        scheduler.unwatch(connection);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordMatcherTest {
+
+    @Test
+    void findsOverlappingAndNestedKeywordsInOnePass() {
+        KeywordMatcher matcher = KeywordMatcher.of(List.of("he", "she", "his", "hers", "usher"));
+
+        assertThat(matcher.match("USHERS")).containsExactlyInAnyOrder("she", "he", "hers", "usher");
+        assertThat(matcher.match("this", "nothing")).containsExactly("his");
+        assertThat(matcher.match("xyz", null)).isEmpty();
+    }
+
+    @Test
+    void keywordsDoNotMatchAcrossTexts() {
+        KeywordMatcher matcher = KeywordMatcher.of(List.of("ab"));
+
+        assertThat(matcher.match("a", "b")).isEmpty();
+        assertThat(matcher.match("xa", "bab")).containsExactly("ab");
+    }
+
+    @Test
+    void sharedIndexMatchesNewKeywordsBeforeTheyAreMerged() {
+        KeywordIndex index = new KeywordIndex();
+        News news = new News(
+                1L, "Solar eclipse", "Visible across Europe", null, "Science", "a");
+
+        assertThat(index.match(news)).isEmpty();
+        index.add(Set.of("eclipse"));
+        assertThat(index.match(news)).containsExactly("eclipse");
+        index.add(Set.of("europe", "eclipse"));
+        assertThat(index.match(news)).containsExactlyInAnyOrder("eclipse", "europe");
+        index.remove(Set.of("eclipse"));
+        index.remove(Set.of("europe", "eclipse"));
+        assertThat(index.size()).isZero();
+        assertThat(index.match(news)).isEmpty();
+    }
+
+    @Test
+    void keywordResubscribedDuringAMergeStillMatchesAfterIt() {
+        // Merges only run when the test calls them
+        KeywordIndex index = new KeywordIndex(VirtualTimeScheduler.create(), Duration.ofSeconds(1));
+        News news = new News(1L, "Solar eclipse", "Visible across Europe", null, "Science", "a");
+        index.add(Set.of("eclipse"));
+        index.merge();
+        assertThat(index.pendingSize()).isZero();
+
+        // The last subscriber leaves while a merge takes its snapshot, and a new one arrives before the swap
+        index.remove(Set.of("eclipse"));
+        Set<String> snapshot = index.keywords();
+        index.add(Set.of("eclipse"));
+        index.swap(KeywordMatcher.of(snapshot));
+
+        assertThat(index.match(news)).containsExactly("eclipse");
+        assertThat(index.pendingSize()).isEqualTo(1);
+        index.merge();
+        assertThat(index.pendingSize()).isZero();
+        assertThat(index.match(news)).containsExactly("eclipse");
+    }
+
+    @Test
+    void keywordsSubscribedWhilePublishingAreNeverMissed() throws Exception {
+        KeywordIndex index = new KeywordIndex(Schedulers.single(), Duration.ofMillis(1));
+        int keywords = 2000;
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < keywords; i++) {
+            content.append(" kw").append(i).append('.');
+        }
+        News news = new News(1L, "Everything", content.toString(), null, "Misc", "a");
+        AtomicInteger subscribed = new AtomicInteger();
+
+        Thread subscriber = new Thread(() -> {
+            for (int i = 0; i < keywords; i++) {
+                index.add(Set.of("kw" + i + "."));
+                subscribed.incrementAndGet();
+            }
+        });
+        subscriber.start();
+        List<String> missed = new ArrayList<>();
+        while (subscriber.isAlive() || subscribed.get() < keywords) {
+            int before = subscribed.get();
+            Set<String> matched = index.match(news);
+            for (int i = 0; i < before; i++) {
+                if (!matched.contains("kw" + i + ".")) {
+                    missed.add("kw" + i + ".");
+                }
+            }
+        }
+        subscriber.join();
+
+        assertThat(missed).isEmpty();
+        // The merges catch up on the worker thread and leave nothing pending
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (index.pendingSize() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(index.pendingSize()).isZero();
+        assertThat(index.match(news)).hasSize(keywords);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.server_sent_event.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongHashMapTest {
+
+    @Test
+    void matchesAHashMapUnderRandomPutsAndRemoves() {
+        LongHashMap<String> map = new LongHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key) != null);
+            } else {
+                map.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (long key = 1; key <= 5_000; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+    }
+
+    @Test
+    void slidingWindowOfSequentialIdsStaysFindable() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long id = 1; id <= 100_000; id++) {
+            map.put(id, id);
+            if (id > 1_000) {
+                map.remove(id - 1_000);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(1_000);
+        assertThat(map.get(99_000)).isNull();
+        assertThat(map.get(99_001)).isEqualTo(99_001L);
+        assertThat(map.get(100_000)).isEqualTo(100_000L);
+    }
+}
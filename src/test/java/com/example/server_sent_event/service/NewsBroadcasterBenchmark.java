@@ -0,0 +1,80 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Fan-out throughput for an increasing number of shards
+ * Run with: ./mvnw test -Pbenchmark
+ */
+@Tag("benchmark")
+@Slf4j
+class NewsBroadcasterBenchmark {
+
+    private static final int SUBSCRIBERS = 20_000;
+    private static final int FRAMES = 500;
+
+    @Test
+    void throughputScalesWithShards() throws Exception {
+        SseFrame frame = new SseFrameEncoder(JsonMapper.builder().build())
+                .encode(new News(1L, "Benchmark", "Fan-out benchmark", LocalDateTime.now(), "Technology", "Bench"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores > 1, "sharding cannot scale on a single core");
+        double single = 0;
+        double bestSharded = 0;
+        for (int shards = 1; shards <= cores; shards *= 2) {
+            double perSecond = run(shards, frame);
+            log.info("shards={} deliveries/s={}", shards, String.format("%,.0f", perSecond));
+            if (shards == 1) {
+                single = perSecond;
+            } else {
+                bestSharded = Math.max(bestSharded, perSecond);
+            }
+        }
+        // Lower bound: spreading the subscribers over several shards must not be slower than one shard
+        assertThat(bestSharded).isGreaterThanOrEqualTo(single);
+    }
+
+    private double run(int shards, SseFrame frame) throws InterruptedException {
+        NewsProperties properties = new NewsProperties();
+        properties.getFanout().setShards(shards);
+        properties.getSubscriber().setBufferSize(FRAMES);
+        NewsBroadcaster broadcaster = new NewsBroadcaster(properties, new SimpleMeterRegistry(), new ConnectionRegistry());
+        LongAdder delivered = new LongAdder();
+        List<Disposable> subscriptions = new ArrayList<>(SUBSCRIBERS);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            subscriptions.add(broadcaster.connect(NewsFilter.NONE, null).frames().subscribe(f -> delivered.increment()));
+        }
+
+        long expected = (long) SUBSCRIBERS * FRAMES;
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            broadcaster.publish(frame);
+        }
+        long deadline = start + TimeUnit.SECONDS.toNanos(60);
+        while (delivered.sum() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        subscriptions.forEach(Disposable::dispose);
+        broadcaster.shutdown();
+        assertThat(delivered.sum()).isEqualTo(expected);
+        return expected / (elapsed / 1e9);
+    }
+}
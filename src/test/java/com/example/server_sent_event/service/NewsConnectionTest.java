@@ -0,0 +1,96 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NewsConnectionTest {
+
+    private static final int BUFFER = 3;
+    private static final long RETRY_MILLIS = 2_500;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private NewsConnection connection(SlowConsumerPolicy policy) {
+        return new NewsConnection(1, "127.0.0.1", 0, NewsFilter.NONE, policy, BUFFER, RETRY_MILLIS,
+                counter(policy, "dropped"), counter(policy, "disconnected"));
+    }
+
+    private Counter counter(SlowConsumerPolicy policy, String action) {
+        return meterRegistry.counter("news.subscriber.overflow", "policy", policy.tag(), "action", action);
+    }
+
+    /**
+     * Offer ten frames to a client that reads nothing until they are all offered, then read everything
+     */
+    private static List<SseFrame> stalledThenDrained(NewsConnection connection) {
+        List<SseFrame> received = new ArrayList<>();
+        StepVerifier.create(connection.frames(), 0)
+                .then(() -> {
+                    for (long id = 1; id <= 10; id++) {
+                        connection.offer(NewsLogTest.ENCODER.encode(
+                                new News(id, "title " + id, "content", LocalDateTime.now(), "Technology", "Tester")));
+                    }
+                    connection.complete();
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(frame -> true, received::add)
+                .verifyComplete();
+        return received;
+    }
+
+    private static List<Long> ids(List<SseFrame> frames) {
+        return frames.stream().map(SseFrame::getId).toList();
+    }
+
+    @Test
+    void dropOldestKeepsTheNewestFrames() {
+        NewsConnection connection = connection(SlowConsumerPolicy.DROP_OLDEST);
+
+        assertThat(ids(stalledThenDrained(connection))).containsExactly(8L, 9L, 10L);
+        assertThat(counter(SlowConsumerPolicy.DROP_OLDEST, "dropped").count()).isEqualTo(7);
+        assertThat(connection.getBufferDepth()).isZero();
+    }
+
+    @Test
+    void dropNewestKeepsWhatWasBufferedFirst() {
+        NewsConnection connection = connection(SlowConsumerPolicy.DROP_NEWEST);
+
+        assertThat(ids(stalledThenDrained(connection))).containsExactly(1L, 2L, 3L);
+        assertThat(counter(SlowConsumerPolicy.DROP_NEWEST, "dropped").count()).isEqualTo(7);
+    }
+
+    @Test
+    void coalesceSkipsToTheLatestFrame() {
+        NewsConnection connection = connection(SlowConsumerPolicy.COALESCE);
+
+        assertThat(ids(stalledThenDrained(connection))).containsExactly(10L);
+        assertThat(counter(SlowConsumerPolicy.COALESCE, "dropped").count()).isEqualTo(9);
+    }
+
+    @Test
+    void disconnectEndsTheStreamWithARetryHint() {
+        NewsConnection connection = connection(SlowConsumerPolicy.DISCONNECT);
+
+        List<SseFrame> frames = stalledThenDrained(connection);
+
+        SseFrame last = frames.get(frames.size() - 1);
+        assertThat(last.getId()).isEqualTo(-1);
+        assertThat(StandardCharsets.UTF_8.decode(last.asByteBuffer()).toString())
+                .isEqualTo("retry:" + RETRY_MILLIS + "\n\n");
+        // Whatever was delivered before the hint came from the full buffer; the client resumes after it
+        assertThat(ids(frames.subList(0, frames.size() - 1))).allMatch(id -> id >= 1 && id <= BUFFER);
+        assertThat(counter(SlowConsumerPolicy.DISCONNECT, "disconnected").count()).isEqualTo(1);
+        assertThat(counter(SlowConsumerPolicy.DISCONNECT, "dropped").count()).isZero();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NewsDrainerTest {
+
+    private static final int CONNECTIONS = 10;
+    private static final int BATCH_SIZE = 3;
+    private static final Duration WINDOW = Duration.ofSeconds(1);
+
+    private final Counter counter = new SimpleMeterRegistry().counter("overflow");
+    private final ConnectionRegistry registry = new ConnectionRegistry();
+
+    // Per connection id: the retry hint it was sent and when its stream ended
+    private final Map<Long, Long> retryHints = new ConcurrentHashMap<>();
+    private final Map<Long, Long> closedAtNanos = new ConcurrentHashMap<>();
+
+    private void open() {
+        NewsConnection connection = new NewsConnection(registry.nextId(), "10.0.0.1", 0, NewsFilter.NONE,
+                SlowConsumerPolicy.DROP_OLDEST, 16, 1000, counter, counter);
+        registry.register(connection);
+        connection.output(Flux.never()).subscribe(
+                frame -> retryHints.put(connection.getId(), retryMillis(frame)),
+                error -> { },
+                () -> closedAtNanos.put(connection.getId(), System.nanoTime()));
+    }
+
+    private static long retryMillis(SseFrame frame) {
+        String text = StandardCharsets.UTF_8.decode(frame.asByteBuffer()).toString();
+        assertThat(text).startsWith("retry:").endsWith("\n\n");
+        return Long.parseLong(text.substring("retry:".length(), text.length() - 2));
+    }
+
+    @Test
+    void closesConnectionsInBatchesSpreadOverTheWindow() {
+        NewsProperties properties = new NewsProperties();
+        properties.getDrain().setWindow(WINDOW);
+        properties.getDrain().setBatchSize(BATCH_SIZE);
+        properties.getAdmission().setMaxCpuLoad(Double.MAX_VALUE);
+        properties.getAdmission().setMaxHeapUsage(Double.MAX_VALUE);
+        AdmissionControl admissionControl = new AdmissionControl(properties, new SimpleMeterRegistry());
+        NewsDrainer drainer = new NewsDrainer(registry, admissionControl, properties);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            open();
+        }
+        drainer.start();
+
+        long start = System.nanoTime();
+        drainer.stop();
+
+        assertThat(drainer.isRunning()).isFalse();
+        assertThat(admissionControl.tryAdmit("10.0.0.2").getRejection())
+                .isEqualTo(AdmissionControl.Rejection.DRAINING);
+        assertThat(registry.all()).allMatch(NewsConnection::isClosed);
+
+        // Every connection got a retry hint within the window, and not all the same one
+        assertThat(retryHints).hasSize(CONNECTIONS);
+        assertThat(retryHints.values()).allMatch(millis -> millis >= 0 && millis < WINDOW.toMillis());
+        assertThat(retryHints.values().stream().distinct().count()).isGreaterThan(1);
+
+        // 10 connections in batches of 3 make 4 batches, 250 ms apart: closes come in 4 bursts
+        assertThat(closedAtNanos).hasSize(CONNECTIONS);
+        List<Long> closes = new ArrayList<>(closedAtNanos.values());
+        closes.sort(null);
+        int bursts = 1;
+        for (int i = 1; i < closes.size(); i++) {
+            if (closes.get(i) - closes.get(i - 1) > TimeUnit.MILLISECONDS.toNanos(100)) {
+                bursts++;
+            }
+        }
+        assertThat(bursts).isEqualTo(4);
+        assertThat(closes.get(closes.size() - 1) - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(700));
+    }
+
+    @Test
+    void finishesRightAwayWithoutConnections() {
+        NewsProperties properties = new NewsProperties();
+        AdmissionControl admissionControl = new AdmissionControl(properties, new SimpleMeterRegistry());
+        NewsDrainer drainer = new NewsDrainer(registry, admissionControl, properties);
+        drainer.start();
+
+        long start = System.nanoTime();
+        drainer.stop();
+
+        assertThat(drainer.isRunning()).isFalse();
+        assertThat(System.nanoTime() - start).isLessThan(properties.getDrain().getWindow().toNanos());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NewsIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    private static List<Long> ids(NewsIndex index, NewsFilter filter, LocalDateTime from, LocalDateTime to, long after) {
+        List<Long> ids = new ArrayList<>();
+        index.query(filter, from, to, after).forEach(frame -> ids.add(frame.getId()));
+        return ids;
+    }
+
+    @Test
+    void queriesByCategoryAuthorAndTimeWindow() {
+        NewsLog log = new NewsLog(100, Long.MAX_VALUE, Long.MAX_VALUE);
+        NewsIndex index = new NewsIndex(log);
+        log.addListener(index);
+        for (long id = 1; id <= 20; id++) {
+            News news = new News(id, "title " + id, "content", START.plusSeconds(30 * (id - 1)),
+                    id % 2 == 0 ? "Sports" : "Tech", String.valueOf((char) ('a' + id % 3)));
+            log.append(NewsLogTest.ENCODER.encode(news), 1);
+        }
+
+        assertThat(ids(index, NewsFilter.of(List.of("sports"), null), null, null, 0))
+                .containsExactly(2L, 4L, 6L, 8L, 10L, 12L, 14L, 16L, 18L, 20L);
+        assertThat(ids(index, NewsFilter.of(List.of("Sports"), List.of("a")), null, null, 0))
+                .containsExactly(6L, 12L, 18L);
+        assertThat(ids(index, NewsFilter.NONE, START.plusMinutes(2), START.plusMinutes(4), 0))
+                .containsExactly(5L, 6L, 7L, 8L, 9L);
+        assertThat(ids(index, NewsFilter.of(List.of("tech"), null), START.plusMinutes(2), START.plusMinutes(4), 5))
+                .containsExactly(7L, 9L);
+        assertThat(ids(index, NewsFilter.of(List.of("politics"), null), null, null, 0)).isEmpty();
+    }
+
+    @Test
+    void evictedNewsLeavesEveryIndex() {
+        NewsLog log = new NewsLog(4, Long.MAX_VALUE, Long.MAX_VALUE);
+        NewsIndex index = new NewsIndex(log);
+        log.addListener(index);
+        for (long id = 1; id <= 10; id++) {
+            News news = new News(id, "title " + id, "content", START.plusMinutes(id),
+                    id % 2 == 0 ? "Sports" : "Tech", "a");
+            log.append(NewsLogTest.ENCODER.encode(news), 1);
+        }
+
+        assertThat(ids(index, NewsFilter.of(List.of("sports"), null), null, null, 0)).containsExactly(8L, 10L);
+        assertThat(ids(index, NewsFilter.of(null, List.of("a")), null, null, 0)).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(ids(index, NewsFilter.NONE, START, START.plusMinutes(8), 0)).containsExactly(7L, 8L);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NewsLogTest {
+
+    static final SseFrameEncoder ENCODER = new SseFrameEncoder(JsonMapper.builder().build());
+
+    private static SseFrame frame(long id) {
+        return ENCODER.encode(new News(id, "title " + id, "content " + id, LocalDateTime.now(), "Technology", "Tester"));
+    }
+
+    private static NewsLog unbounded(int maxItems) {
+        return new NewsLog(maxItems, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void appendsAndFindsSequenceAfterId() {
+        NewsLog log = unbounded(8192);
+        for (long id = 1; id <= 5000; id++) {
+            log.append(frame(id), 1);
+        }
+
+        assertThat(log.size()).isEqualTo(5000);
+        assertThat(log.get(4999).getId()).isEqualTo(5000L);
+        assertThat(log.sequenceAfter(0)).isZero();
+        assertThat(log.sequenceAfter(1024)).isEqualTo(1024);
+        assertThat(log.sequenceAfter(5000)).isEqualTo(5000);
+        assertThat(log.after(4998L)).extracting(SseFrame::getId).containsExactly(4999L, 5000L);
+    }
+
+    @Test
+    void evictsOldestByCount() {
+        NewsLog log = unbounded(3);
+        for (long id = 1; id <= 5; id++) {
+            log.append(frame(id), 10);
+        }
+
+        assertThat(log.snapshot()).extracting(SseFrame::getId).containsExactly(3L, 4L, 5L);
+        assertThat(log.after(1L)).extracting(SseFrame::getId).containsExactly(3L, 4L, 5L);
+        assertThat(log.get(0)).isNull();
+        assertThat(log.retainedBytes()).isEqualTo(30);
+        assertThat(log.evictions(NewsLog.EvictionReason.COUNT)).isEqualTo(2);
+    }
+
+    @Test
+    void findsRetainedNewsByIdUntilEvicted() {
+        NewsLog log = unbounded(3);
+        for (long id = 1; id <= 5; id++) {
+            log.append(frame(id), 1);
+        }
+
+        assertThat(log.find(1)).isNull();
+        assertThat(log.find(2)).isNull();
+        assertThat(log.find(4).getId()).isEqualTo(4L);
+        assertThat(log.find(5).getNews().getTitle()).isEqualTo("title 5");
+        assertThat(log.find(6)).isNull();
+    }
+
+    @Test
+    void evictsOldestByBytes() {
+        NewsLog log = new NewsLog(100, 250, Long.MAX_VALUE);
+        for (long id = 1; id <= 4; id++) {
+            log.append(frame(id), 100);
+        }
+
+        assertThat(log.snapshot()).extracting(SseFrame::getId).containsExactly(3L, 4L);
+        assertThat(log.retainedBytes()).isEqualTo(200);
+        assertThat(log.evictions(NewsLog.EvictionReason.BYTES)).isEqualTo(2);
+    }
+
+    @Test
+    void evictsOldestByAge() {
+        AtomicLong now = new AtomicLong();
+        NewsLog log = new NewsLog(100, Long.MAX_VALUE, 1_000, now::get);
+        log.append(frame(1), 1);
+        now.set(600);
+        log.append(frame(2), 1);
+        now.set(1_500);
+        log.evictExpired();
+
+        assertThat(log.snapshot()).extracting(SseFrame::getId).containsExactly(2L);
+        assertThat(log.evictions(NewsLog.EvictionReason.AGE)).isEqualTo(1);
+    }
+
+    @Test
+    void readersSeeContiguousPrefixWhileWriterAppends() throws Exception {
+        int total = 200_000;
+        NewsLog log = unbounded(total);
+        int readers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        for (int r = 0; r < readers; r++) {
+            executor.submit(() -> {
+                while (done.getCount() > 0 || log.size() < total) {
+                    long expected = 1;
+                    for (SseFrame frame : log.after(null)) {
+                        if (frame == null || frame.getId() != expected) {
+                            failures.add("expected " + expected + " but saw " + frame);
+                            return;
+                        }
+                        expected++;
+                    }
+                    if (expected > total) {
+                        return;
+                    }
+                }
+            });
+        }
+        executor.submit(() -> {
+            for (long id = 1; id <= total; id++) {
+                log.append(frame(id), 1);
+            }
+            done.countDown();
+        });
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(failures).isEmpty();
+        assertThat(log.size()).isEqualTo(total);
+    }
+}
@@ -0,0 +1,539 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NewsServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private NewsBroadcaster broadcaster;
+    private HeartbeatScheduler heartbeats;
+    private ReplayPacer replayPacer;
+    private NewsStore store;
+    private NewsService service;
+
+    @BeforeEach
+    void setUp() {
+        start(testProperties());
+    }
+
+    private static NewsProperties testProperties() {
+        NewsProperties properties = new NewsProperties();
+        properties.getStorage().setEnabled(false);
+        properties.getReplay().setNodeRate(0);
+        properties.getReplay().setConnectionRate(0);
+        return properties;
+    }
+
+    private void start(NewsProperties properties) {
+        meterRegistry = new SimpleMeterRegistry();
+        ConnectionRegistry registry = new ConnectionRegistry();
+        broadcaster = new NewsBroadcaster(properties, meterRegistry, registry);
+        heartbeats = new HeartbeatScheduler(properties, meterRegistry);
+        replayPacer = new ReplayPacer(properties, meterRegistry);
+        store = new NewsStore(properties, NewsLogTest.ENCODER);
+        service = new NewsService(properties, meterRegistry, NewsLogTest.ENCODER, broadcaster, registry, heartbeats,
+                replayPacer, store);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.cleanup();
+        broadcaster.shutdown();
+        heartbeats.shutdown();
+        replayPacer.shutdown();
+        store.close();
+    }
+
+    @Test
+    void concurrentPublishesAndSubscribesNeverFail() throws Exception {
+        int publishers = 4;
+        int perPublisher = 500;
+        int subscribers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(publishers + subscribers);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int p = 0; p < publishers; p++) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perPublisher; i++) {
+                        service.addNews("title", "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        for (int s = 0; s < subscribers; s++) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        List<News> all = window();
+                        List<Long> replayed = new ArrayList<>();
+                        service.getNewsStream()
+                                .take(all.size())
+                                .map(News::getId)
+                                .doOnNext(replayed::add)
+                                .blockLast(Duration.ofSeconds(5));
+                        assertThat(replayed).isSorted().doesNotHaveDuplicates();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(failures).isEmpty();
+        assertThat(window()).hasSize(2 + publishers * perPublisher);
+    }
+
+    @Test
+    void newsQueuedAtShutdownIsPublishedOrFailedButNeverLeftPending() throws Exception {
+        int producers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        ConcurrentLinkedQueue<CompletableFuture<News>> results = new ConcurrentLinkedQueue<>();
+        CountDownLatch producing = new CountDownLatch(producers);
+        AtomicBoolean stop = new AtomicBoolean();
+        for (int p = 0; p < producers; p++) {
+            executor.submit(() -> {
+                producing.countDown();
+                for (int i = 0; i < 20_000 && !stop.get(); i++) {
+                    results.add(service.addNews("title", "content", "Technology", "Tester").toFuture());
+                }
+            });
+        }
+        producing.await();
+        Thread.sleep(20);
+
+        service.cleanup();
+        stop.set(true);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        int published = 0;
+        for (CompletableFuture<News> result : results) {
+            try {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isNotNull();
+                published++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class).hasMessageContaining("shut down");
+            }
+        }
+        assertThat(published).isPositive();
+        assertThatThrownBy(() -> service.addNews("late", "content", "Technology", "Tester").block(Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void reconnectsDuringHeavyPublishingSeeEveryIdExactlyOnce() throws Exception {
+        int published = 3_000;
+        int reconnects = 200;
+        long lastId = 2 + published;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        executor.submit(() -> {
+            for (int i = 0; i < published; i++) {
+                service.addNews("title " + i, "content", "Technology", "Tester").subscribe();
+            }
+        });
+        for (int r = 0; r < reconnects; r++) {
+            executor.submit(() -> {
+                try {
+                    List<News> history = window();
+                    long resumeFrom = history.get(ThreadLocalRandom.current().nextInt(history.size())).getId();
+                    if (resumeFrom >= lastId) {
+                        return;
+                    }
+                    List<Long> received = service.getNewsStream(resumeFrom)
+                            .map(News::getId)
+                            .takeUntil(id -> id >= lastId)
+                            .collectList()
+                            .block(Duration.ofSeconds(30));
+                    assertThat(received).containsExactlyElementsOf(
+                            LongStream.rangeClosed(resumeFrom + 1, lastId).boxed().toList());
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    void subscriberCountNeverDriftsOnCancelOrCompletion() {
+        List<Disposable> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            subscriptions.add(service.getNewsStream().subscribe());
+        }
+        assertThat(service.getSubscriberCount()).isEqualTo(10);
+
+        subscriptions.forEach(Disposable::dispose);
+        service.getNewsStream().take(1).blockLast(Duration.ofSeconds(5));
+
+        assertThat(service.getSubscriberCount()).isZero();
+        assertThat(service.getConnections()).isEmpty();
+    }
+
+    @Test
+    void subscriberCountSamplesAreCoalescedAndShared() throws Exception {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getSubscriber().setCountInterval(Duration.ofMillis(50));
+        start(properties);
+        List<Integer> counts = new CopyOnWriteArrayList<>();
+        Disposable listener = service.getSubscriberCountStream().subscribe(counts::add);
+
+        List<Disposable> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            subscriptions.add(service.getNewsStream().subscribe());
+        }
+        Thread.sleep(300);
+        subscriptions.subList(0, 20).forEach(Disposable::dispose);
+        Thread.sleep(300);
+
+        // About a dozen samples and 70 connection changes, but only the changes in between samples are emitted
+        assertThat(counts).startsWith(0).endsWith(30).contains(50).hasSizeLessThanOrEqualTo(5);
+        for (int i = 1; i < counts.size(); i++) {
+            assertThat(counts.get(i)).isNotEqualTo(counts.get(i - 1));
+        }
+        // A late listener gets the last sample right away instead of waiting for the next change
+        assertThat(service.getSubscriberCountStream().blockFirst(Duration.ofSeconds(1))).isEqualTo(30);
+
+        listener.dispose();
+        subscriptions.forEach(Disposable::dispose);
+    }
+
+    @Test
+    void idleConnectionsGetHeartbeatComments() {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getHeartbeat().setInterval(Duration.ofMillis(200));
+        properties.getHeartbeat().setTick(Duration.ofMillis(10));
+        start(properties);
+
+        List<SseFrame> frames = service.getNewsFrames(null, NewsFilter.NONE, null)
+                .take(4)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(frames).hasSize(4);
+        assertThat(frames.subList(0, 2)).allSatisfy(frame -> assertThat(frame.getNews()).isNotNull());
+        assertThat(frames.subList(2, 4)).containsOnly(HeartbeatScheduler.HEARTBEAT);
+    }
+
+    @Test
+    void lastEventIdAheadOfTheLogResumesAfterTheNewestNews() {
+        // As after a restart without storage, or a reconnect to another node
+        List<News> live = service.getNewsStream(1_000L)
+                .take(1)
+                .doOnSubscribe(subscription -> service.addNews("breaking", "content", "Technology", "Tester").subscribe())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(live).extracting(News::getTitle).containsExactly("breaking");
+        assertThat(live).extracting(News::getId).containsExactly(3L);
+    }
+
+    @Test
+    void liveNewsOverflowingTheBufferDuringAReplayIsCaughtUpFromHistory() {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getSubscriber().setBufferSize(4);
+        properties.getReplay().setConnectionRate(200);
+        properties.getReplay().setConnectionBurst(5);
+        start(properties);
+        for (int i = 0; i < 40; i++) {
+            service.addNews("title " + i, "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+        }
+
+        // Far more live news than the buffer holds arrives while the paced replay runs
+        List<Long> received = service.getNewsStream(0L)
+                .map(News::getId)
+                .doOnSubscribe(subscription -> {
+                    for (int i = 0; i < 20; i++) {
+                        service.addNews("live " + i, "content", "Technology", "Tester").subscribe();
+                    }
+                })
+                .takeUntil(id -> id >= 62)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(received).containsExactlyElementsOf(LongStream.rangeClosed(1, 62).boxed().toList());
+    }
+
+    @Test
+    void replayIsPacedWhileLiveNewsIsNot() {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getReplay().setConnectionRate(100);
+        properties.getReplay().setConnectionBurst(10);
+        start(properties);
+        for (int i = 0; i < 40; i++) {
+            service.addNews("title " + i, "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+        }
+
+        long started = System.nanoTime();
+        List<News> replayed = service.getNewsStream().take(42).collectList().block(Duration.ofSeconds(5));
+        long replayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertThat(replayed).extracting(News::getId).isSorted().doesNotHaveDuplicates().hasSize(42);
+        // 10 frames of burst, then 32 frames at 100 per second
+        assertThat(replayMillis).isGreaterThanOrEqualTo(250);
+
+        List<News> live = service.getNewsStream(42L)
+                .take(1)
+                .doOnSubscribe(subscription -> service.addNews("breaking", "content", "Technology", "Tester").subscribe())
+                .collectList()
+                .block(Duration.ofMillis(500));
+        assertThat(live).extracting(News::getTitle).containsExactly("breaking");
+    }
+
+    @Test
+    void concurrentReconnectsFromNearbyIdsShareOneReplayCursor() throws Exception {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getReplay().setConnectionRate(500);
+        properties.getReplay().setConnectionBurst(1);
+        start(properties);
+        for (int i = 0; i < 98; i++) {
+            service.addNews("title " + i, "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+        }
+        int reconnects = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(reconnects);
+        List<Future<List<Long>>> received = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int r = 0; r < reconnects; r++) {
+            long resumeFrom = r % 5;
+            received.add(executor.submit(() -> {
+                start.await();
+                return service.getNewsStream(resumeFrom)
+                        .map(News::getId)
+                        .takeUntil(id -> id >= 100)
+                        .collectList()
+                        .block(Duration.ofSeconds(10));
+            }));
+        }
+        start.countDown();
+
+        for (int r = 0; r < reconnects; r++) {
+            long resumeFrom = r % 5;
+            assertThat(received.get(r).get(15, TimeUnit.SECONDS))
+                    .containsExactlyElementsOf(LongStream.rangeClosed(resumeFrom + 1, 100).boxed().toList());
+        }
+        executor.shutdown();
+        assertThat(meterRegistry.counter("news.replay.cohort.joins").count()).isPositive();
+        assertThat(meterRegistry.counter("news.replay.cursors").count()).isLessThan(reconnects);
+    }
+
+    @Test
+    void restartRecoversHistoryFromStorageAndReplaysBeyondTheMemoryWindow(@TempDir Path directory) {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getStorage().setEnabled(true);
+        properties.getStorage().setDirectory(directory.toString());
+        properties.getStorage().setSegmentSize(DataSize.ofKilobytes(4));
+        properties.getStorage().setMaxSegments(1);
+        properties.getStorage().getArchive().setBlockSize(4);
+        properties.getHistory().setMaxItems(10);
+        start(properties);
+        for (int i = 0; i < 48; i++) {
+            service.addNews("title " + i, "content", "Technology", "Tester", Durability.FSYNC).block(Duration.ofSeconds(5));
+        }
+
+        tearDown();
+        start(properties);
+
+        assertThat(service.getNews(0L, null).map(News::getId).collectList().block(Duration.ofSeconds(5)))
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, 50).boxed().toList());
+        assertThat(service.getNewsStream(5L).take(45).map(News::getId).collectList().block(Duration.ofSeconds(5)))
+                .containsExactlyElementsOf(LongStream.rangeClosed(6, 50).boxed().toList());
+        assertThat(service.addNews("after restart", "content", "Technology", "Tester").block(Duration.ofSeconds(5)).getId())
+                .isEqualTo(51L);
+    }
+
+    @Test
+    void freshSubscribersOnlyReplayTheInMemoryWindowWhenStorageHoldsMore(@TempDir Path directory) {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getStorage().setEnabled(true);
+        properties.getStorage().setDirectory(directory.toString());
+        properties.getStorage().setDurability(Durability.MEMORY);
+        properties.getHistory().setMaxItems(10);
+        start(properties);
+        for (int i = 0; i < 30; i++) {
+            service.addNews("title " + i, "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+        }
+
+        List<Long> fresh = service.getNewsStream()
+                .take(Duration.ofMillis(500))
+                .map(News::getId)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        List<Long> resumed = service.getNewsStream(0L)
+                .take(32)
+                .map(News::getId)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(fresh).containsExactlyElementsOf(LongStream.rangeClosed(23, 32).boxed().toList());
+        assertThat(resumed).containsExactlyElementsOf(LongStream.rangeClosed(1, 32).boxed().toList());
+    }
+
+    @Test
+    void filteredQueriesReachingPastTheWindowScanStorage(@TempDir Path directory) {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getStorage().setEnabled(true);
+        properties.getStorage().setDirectory(directory.toString());
+        properties.getStorage().setDurability(Durability.MEMORY);
+        properties.getHistory().setMaxItems(10);
+        start(properties);
+        for (int i = 0; i < 30; i++) {
+            service.addNews("title " + i, "content", i % 2 == 0 ? "Sports" : "Technology", "Tester").block(Duration.ofSeconds(5));
+        }
+        // Ids 3..32 were published after the two seeded ones, Sports on the odd ids; ids 23..32 are in memory
+        NewsFilter sports = NewsFilter.of(List.of("Sports"), null);
+        List<Long> allSports = LongStream.rangeClosed(3, 31).filter(id -> id % 2 == 1).boxed().toList();
+
+        assertThat(queried(sports, null, null, null)).containsExactly(23L, 25L, 27L, 29L, 31L);
+        assertThat(queried(sports, null, 0L, null)).containsExactlyElementsOf(allSports);
+        assertThat(queried(sports, null, 10L, 4)).containsExactly(11L, 13L, 15L, 17L);
+        assertThat(queried(sports, null, 19L, 4)).containsExactly(21L, 23L, 25L, 27L);
+        assertThat(queried(sports, LocalDateTime.now().minusDays(1), null, null)).containsExactlyElementsOf(allSports);
+        assertThat(queried(sports, LocalDateTime.now().plusDays(1), null, null)).isEmpty();
+    }
+
+    @Test
+    void snapshotIsEncodedOncePerVersionAndSkippedWhenTheWindowIsTooLarge() {
+        List<NewsSnapshot> concurrent = Flux.range(0, 8)
+                .flatMap(i -> service.getSnapshot())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        assertThat(concurrent).hasSize(8).allSatisfy(snapshot -> assertThat(snapshot).isSameAs(concurrent.get(0)));
+
+        service.addNews("fresh", "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+        NewsSnapshot next = service.getSnapshot().block(Duration.ofSeconds(5));
+        assertThat(next).isNotSameAs(concurrent.get(0));
+        assertThat(next.getLastId()).isEqualTo(3L);
+
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getQuery().setSnapshotMaxSize(DataSize.ofBytes(100));
+        start(properties);
+        assertThat(service.getSnapshot().blockOptional(Duration.ofSeconds(5))).isEmpty();
+    }
+
+    @Test
+    void replayFromStorageIsWrittenInBatchesThatResumeMidBatch(@TempDir Path directory) {
+        tearDown();
+        NewsProperties properties = testProperties();
+        properties.getStorage().setEnabled(true);
+        properties.getStorage().setDirectory(directory.toString());
+        properties.getStorage().setDurability(Durability.MEMORY);
+        properties.getHistory().setMaxItems(10);
+        properties.getReplay().setBatchSize(8);
+        start(properties);
+        for (int i = 0; i < 48; i++) {
+            service.addNews("title " + i, "content", "Technology", "Tester").block(Duration.ofSeconds(5));
+        }
+
+        List<SseFrame> frames = service.getNewsFrames(5L, NewsFilter.NONE, null)
+                .takeUntil(frame -> frame.getId() >= 50)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(frames).hasSizeLessThan(45);
+        assertThat(frames.get(0).count()).isEqualTo(8);
+        List<Long> ids = new ArrayList<>();
+        for (SseFrame frame : frames) {
+            StandardCharsets.UTF_8.decode(frame.asByteBuffer()).toString().lines()
+                    .filter(line -> line.startsWith("id:"))
+                    .forEach(line -> ids.add(Long.parseLong(line.substring(3))));
+        }
+        assertThat(ids).containsExactlyElementsOf(LongStream.rangeClosed(6, 50).boxed().toList());
+
+        SseFrame batch = frames.get(0);
+        SseFrame rest = batch.after(batch.getFirstId() + 2);
+        assertThat(rest.getFirstId()).isEqualTo(batch.getFirstId() + 3);
+        assertThat(StandardCharsets.UTF_8.decode(rest.asByteBuffer()).toString())
+                .startsWith(":").contains("id:" + rest.getFirstId() + "\n").doesNotContain("id:" + batch.getFirstId() + "\n");
+    }
+
+    @Test
+    void keywordSubscribersReceiveOnlyNewsContainingTheirKeywordsOnce() throws Exception {
+        CompletableFuture<List<String>> space = service
+                .getNewsFrames(2L, NewsFilter.of(null, null, List.of("Rocket", "MARS")), null)
+                .mapNotNull(SseFrame::getNews)
+                .map(News::getTitle)
+                .take(2)
+                .collectList()
+                .toFuture();
+        CompletableFuture<List<String>> ferries = service
+                .getNewsFrames(2L, NewsFilter.of(List.of("Local"), null, List.of("ferry")), null)
+                .mapNotNull(SseFrame::getNews)
+                .map(News::getTitle)
+                .take(1)
+                .collectList()
+                .toFuture();
+
+        service.addNews("Rocket to Mars", "The rocket lifts off at dawn", "Science", "a").block(Duration.ofSeconds(5));
+        service.addNews("Ferry strike", "No ferry service today", "Business", "b").block(Duration.ofSeconds(5));
+        service.addNews("Harbour news", "New ferry timetable", "Local", "c").block(Duration.ofSeconds(5));
+        service.addNews("Launch window", "Next slot for a mission to mars", "Science", "a").block(Duration.ofSeconds(5));
+
+        assertThat(space.get(5, TimeUnit.SECONDS)).containsExactly("Rocket to Mars", "Launch window");
+        assertThat(ferries.get(5, TimeUnit.SECONDS)).containsExactly("Harbour news");
+    }
+
+    private List<News> window() {
+        return service.getNews(null, null).collectList().block(Duration.ofSeconds(5));
+    }
+
+    private List<Long> queried(NewsFilter filter, LocalDateTime from, Long after, Integer limit) {
+        return service.queryNews(filter, from, null, after, limit)
+                .map(News::getId)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.config.NewsProperties;
+import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplayCohortsTest {
+
+    private static final List<SseFrame> HISTORY = LongStream.rangeClosed(1, 10)
+            .mapToObj(id -> NewsLogTest.ENCODER.encode(
+                    new News(id, "title " + id, "content", LocalDateTime.now(), "c" + id % 3, "Tester")))
+            .toList();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReplayPacer pacer = new ReplayPacer(unpaced(), meterRegistry);
+    private final ReplayCohorts cohorts = new ReplayCohorts(
+            (after, batched) -> Flux.fromIterable(HISTORY).filter(frame -> frame.getId() > after),
+            pacer, 16, 1000, meterRegistry);
+
+    private static NewsProperties unpaced() {
+        NewsProperties properties = new NewsProperties();
+        properties.getReplay().setNodeRate(0);
+        properties.getReplay().setConnectionRate(0);
+        return properties;
+    }
+
+    @AfterEach
+    void stopPacer() {
+        pacer.shutdown();
+    }
+
+    @Test
+    void forgetsFiltersOnceTheirCursorsAreDone() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            NewsFilter filter = NewsFilter.of(List.of("c" + i % 3), List.of("author " + i));
+            cohorts.replay(null, filter, false).blockLast(Duration.ofSeconds(5));
+            cohorts.replay((long) i % 10, filter, true).take(1).blockLast(Duration.ofSeconds(5));
+        }
+
+        // A cursor unregisters right after completing its members, possibly on the pacer's thread
+        awaitTrue(() -> cohorts.activeFilters() == 0);
+        assertThat(cohorts.activeCursors()).isZero();
+    }
+
+    @Test
+    void replaysEverythingAfterTheIdMatchingTheFilter() throws InterruptedException {
+        NewsFilter filter = NewsFilter.of(List.of("c1"), null);
+
+        List<Long> ids = cohorts.replay(3L, filter, false)
+                .map(SseFrame::getId)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(ids).containsExactly(4L, 7L, 10L);
+        awaitTrue(() -> cohorts.activeFilters() == 0);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+
+    private static void append(NewsLog log, long id, String title, String content) {
+        log.append(NewsLogTest.ENCODER.encode(new News(id, title, content, LocalDateTime.now(), "World", "Desk")), 1);
+    }
+
+    @Test
+    void ranksByBm25AndKeepsTheTopK() {
+        NewsLog log = new NewsLog(100, Long.MAX_VALUE, Long.MAX_VALUE);
+        SearchIndex index = new SearchIndex(log);
+        log.addListener(index);
+        append(log, 1, "Election results", "The election was close, the election count goes on");
+        append(log, 2, "Weather", "Sunny with a chance of rain");
+        append(log, 3, "Markets", "Stocks rallied after the election");
+        append(log, 4, "Football", "A late goal decided the final");
+
+        assertThat(index.search("ELECTION", 10)).extracting(SseFrame::getId).containsExactly(1L, 3L);
+        assertThat(index.search("election rain", 2)).extracting(SseFrame::getId).containsExactly(2L, 1L);
+        assertThat(index.search("election", 1)).extracting(SseFrame::getId).containsExactly(1L);
+        assertThat(index.search("cricket", 10)).isEmpty();
+    }
+
+    @Test
+    void evictionPrunesPostings() {
+        NewsLog log = new NewsLog(2, Long.MAX_VALUE, Long.MAX_VALUE);
+        SearchIndex index = new SearchIndex(log);
+        log.addListener(index);
+        for (long id = 1; id <= 300; id++) {
+            append(log, id, "Story " + id, id % 2 == 0 ? "even news" : "odd news");
+        }
+
+        assertThat(index.search("news", 10)).extracting(SseFrame::getId).containsExactlyInAnyOrder(299L, 300L);
+        assertThat(index.search("odd", 10)).extracting(SseFrame::getId).containsExactly(299L);
+        assertThat(index.search("1 2 298", 10)).isEmpty();
+        // story, news, odd, even and the two retained numbers
+        assertThat(index.termCount()).isEqualTo(6);
+    }
+}
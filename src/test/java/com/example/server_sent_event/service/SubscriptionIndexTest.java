@@ -0,0 +1,129 @@
+package com.example.server_sent_event.service;
+
+import com.example.server_sent_event.model.News;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscriptionIndexTest {
+
+    private static final Counter COUNTER = new SimpleMeterRegistry().counter("overflow");
+
+    private final SubscriptionIndex index = new SubscriptionIndex();
+
+    private NewsConnection subscribe(long id, NewsFilter filter) {
+        NewsConnection connection = new NewsConnection(id, null, 0, filter, SlowConsumerPolicy.DROP_OLDEST, 16, 1000,
+                COUNTER, COUNTER);
+        index.add(connection);
+        return connection;
+    }
+
+    private static News news(String category, String author, String title) {
+        return new News(1L, title, "content", LocalDateTime.now(), category, author);
+    }
+
+    private List<Long> matches(News news, Set<String> keywords) {
+        List<Long> ids = new ArrayList<>();
+        index.forEachMatch(news, keywords, connection -> ids.add(connection.getId()));
+        return ids;
+    }
+
+    private List<Long> matches(News news) {
+        return matches(news, Set.of());
+    }
+
+    @Test
+    void unfilteredSubscribersReceiveEverything() {
+        subscribe(1, NewsFilter.NONE);
+        subscribe(2, NewsFilter.of(null, List.of(" ")));
+
+        assertThat(matches(news("Technology", "Alice", "anything"))).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(matches(news(null, null, "anything"))).containsExactlyInAnyOrder(1L, 2L);
+    }
+
+    @Test
+    void categoryAndAuthorMustBothMatch() {
+        subscribe(1, NewsFilter.of(List.of("Technology"), List.of("Alice")));
+
+        assertThat(matches(news("Technology", "Alice", "t"))).containsExactly(1L);
+        assertThat(matches(news("Technology", "Bob", "t"))).isEmpty();
+        assertThat(matches(news("Sports", "Alice", "t"))).isEmpty();
+    }
+
+    @Test
+    void authorOnlySubscribersIgnoreTheCategory() {
+        subscribe(1, NewsFilter.of(null, List.of("Alice", "Bob")));
+
+        assertThat(matches(news("Technology", "Alice", "t"))).containsExactly(1L);
+        assertThat(matches(news("Sports", "Bob", "t"))).containsExactly(1L);
+        assertThat(matches(news("Sports", "Carol", "t"))).isEmpty();
+    }
+
+    @Test
+    void valuesMatchCaseInsensitively() {
+        subscribe(1, NewsFilter.of(List.of("  TECHNOLOGY "), List.of("alice")));
+
+        assertThat(matches(news("technology", "ALICE", "t"))).containsExactly(1L);
+        assertThat(NewsFilter.of(List.of("Technology"), null)).isEqualTo(NewsFilter.of(List.of("technology"), null));
+    }
+
+    @Test
+    void keywordSubscribersAreDeliveredToOnceAndStillFilteredByCategory() {
+        subscribe(1, NewsFilter.of(List.of("Technology"), null, List.of("reactor", "spring")));
+
+        Set<String> found = Set.of("reactor", "spring");
+        assertThat(matches(news("Technology", "Alice", "Spring and Reactor"), found)).containsExactly(1L);
+        assertThat(matches(news("Sports", "Alice", "Spring and Reactor"), found)).isEmpty();
+        assertThat(matches(news("Technology", "Alice", "Spring and Reactor"))).isEmpty();
+    }
+
+    @Test
+    void indexAgreesWithTheFilterItself() {
+        List<NewsFilter> filters = List.of(NewsFilter.NONE,
+                NewsFilter.of(List.of("Technology"), null),
+                NewsFilter.of(List.of("Technology", "Sports"), List.of("Bob")),
+                NewsFilter.of(null, List.of("alice")));
+        for (int i = 0; i < filters.size(); i++) {
+            subscribe(i, filters.get(i));
+        }
+
+        for (String category : List.of("Technology", "Sports", "Politics")) {
+            for (String author : List.of("Alice", "Bob")) {
+                News news = news(category, author, "t");
+                List<Long> expected = new ArrayList<>();
+                for (int i = 0; i < filters.size(); i++) {
+                    if (filters.get(i).matches(news)) {
+                        expected.add((long) i);
+                    }
+                }
+                assertThat(matches(news)).as("%s by %s", category, author)
+                        .containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+    }
+
+    @Test
+    void removedSubscribersNoLongerMatch() {
+        NewsConnection everything = subscribe(1, NewsFilter.NONE);
+        NewsConnection technology = subscribe(2, NewsFilter.of(List.of("Technology"), null));
+        NewsConnection alice = subscribe(3, NewsFilter.of(null, List.of("Alice")));
+        NewsConnection keyword = subscribe(4, NewsFilter.of(null, null, List.of("spring")));
+        News news = news("Technology", "Alice", "Spring");
+
+        assertThat(matches(news, Set.of("spring"))).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+
+        index.remove(everything);
+        index.remove(technology);
+        index.remove(alice);
+        index.remove(keyword);
+
+        assertThat(matches(news, Set.of("spring"))).isEmpty();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.server_sent_event.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsTheBurstThenSpacesReservationsAtTheRate() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.reserve(1)).isZero();
+        }
+        long wait = bucket.reserve(1);
+        assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(bucket.reserve(10)).isGreaterThan(wait + TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    void nonPositiveRateIsUnlimited() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(bucket.reserve(1)).isZero();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.server_sent_event.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private SegmentLog open() throws IOException {
+        return SegmentLog.open(directory, SEGMENT_SIZE, 100, Duration.ofMillis(50));
+    }
+
+    private static ByteBuffer payload(long id) {
+        return ByteBuffer.wrap(("record " + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    private static List<String> texts(Iterable<ByteBuffer> records) {
+        List<String> result = new ArrayList<>();
+        records.forEach(record -> result.add(text(record)));
+        return result;
+    }
+
+    @Test
+    void appendsReadsAndRollsOverSegments() throws IOException {
+        try (SegmentLog log = open()) {
+            for (long id = 1; id <= 500; id++) {
+                log.append(id, payload(id));
+            }
+
+            assertThat(log.segmentCount()).isGreaterThan(1);
+            assertThat(log.firstId()).isEqualTo(1);
+            assertThat(log.lastId()).isEqualTo(500);
+            assertThat(text(log.read(321))).isEqualTo("record 321");
+            assertThat(log.read(501)).isNull();
+            assertThat(texts(log.after(497))).containsExactly("record 498", "record 499", "record 500");
+        }
+    }
+
+    @Test
+    void acknowledgesDurabilityAfterSync() throws IOException {
+        try (SegmentLog log = open()) {
+            for (long id = 1; id <= 100; id++) {
+                log.append(id, payload(id));
+            }
+
+            log.awaitDurable(100).block(Duration.ofSeconds(5));
+
+            assertThat(log.durableId()).isGreaterThanOrEqualTo(100);
+        }
+    }
+
+    @Test
+    void recoversAfterReopenAndDiscardsTornTail() throws IOException {
+        try (SegmentLog log = open()) {
+            for (long id = 1; id <= 300; id++) {
+                log.append(id, payload(id));
+            }
+        }
+        Path last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.max(Path::compareTo).orElseThrow();
+        }
+        // Flip a payload byte of the last record, as if the process died while writing it
+        try (SegmentLog log = open()) {
+            long lastBase = Segment.baseId(last);
+            long offset = Segment.FILE_HEADER;
+            for (long id = lastBase; id < 300; id++) {
+                offset += Segment.HEADER + log.read(id).remaining();
+            }
+            try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+                file.seek(offset + Segment.HEADER);
+                file.write('X');
+            }
+        }
+
+        try (SegmentLog log = open()) {
+            assertThat(log.lastId()).isEqualTo(299);
+            assertThat(text(log.read(299))).isEqualTo("record 299");
+            assertThat(log.read(300)).isNull();
+
+            log.append(300, payload(300));
+            assertThat(texts(log.after(298))).containsExactly("record 299", "record 300");
+        }
+    }
+
+    @Test
+    void reservedIdsSurviveACrashAndAreReleasedOnClose() throws IOException {
+        SegmentLog crashed = open();
+        try {
+            for (long id = 1; id <= 3; id++) {
+                crashed.reserve(id);
+                crashed.append(id, payload(id));
+            }
+
+            // Reopened without closing, as after a crash: ids handed out may go beyond the records
+            try (SegmentLog log = open()) {
+                assertThat(log.reservedId()).isGreaterThan(3);
+                long next = log.reservedId() + 1;
+                log.reserve(next);
+                log.append(next, payload(4));
+                assertThat(texts(log.after(0))).containsExactly("record 1", "record 2", "record 3", "record 4");
+            }
+            // A clean close leaves nothing reserved beyond the last record
+            try (SegmentLog log = open()) {
+                assertThat(log.reservedId()).isEqualTo(log.lastId());
+            }
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    void refusesSegmentsOfAnotherFormatAndLeavesThemUntouched() throws IOException {
+        Path unversioned = directory.resolve(String.format("%020d.segment", 1));
+        byte[] old = new byte[SEGMENT_SIZE];
+        old[1] = 42;
+        Files.write(unversioned, old);
+
+        assertThatThrownBy(this::open).isInstanceOf(IOException.class).hasMessageContaining("not in a known segment format");
+        assertThat(Files.readAllBytes(unversioned)).isEqualTo(old);
+
+        Files.delete(unversioned);
+        try (SegmentLog log = open()) {
+            log.append(1, payload(1));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        assertThat(new String(bytes, 0, Segment.FILE_HEADER, StandardCharsets.US_ASCII)).isEqualTo(":news-segment 01\n");
+        bytes[Segment.FILE_HEADER - 2] = '2';
+        Files.write(segment, bytes);
+
+        assertThatThrownBy(this::open).isInstanceOf(IOException.class).hasMessageContaining("format version 2");
+    }
+
+    @Test
+    void deletesOldestSegmentsBeyondRetention() throws IOException {
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE, 2, Duration.ofMillis(50))) {
+            for (long id = 1; id <= 1_000; id++) {
+                log.append(id, payload(id));
+            }
+
+            assertThat(log.segmentCount()).isEqualTo(2);
+            assertThat(log.read(1)).isNull();
+            assertThat(texts(log.after(0))).first().isEqualTo("record " + log.firstId());
+            assertThat(texts(log.after(0))).last().isEqualTo("record 1000");
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).hasSize(2);
+        }
+    }
+
+    @Test
+    void batchesAreContiguousSseStreamsWithinASegment() throws IOException {
+        try (SegmentLog log = open()) {
+            for (long id = 1; id <= 300; id++) {
+                log.append(id, ByteBuffer.wrap(("id:" + id + "\ndata:x\n\n").getBytes(StandardCharsets.UTF_8)));
+            }
+
+            List<RecordBatch> batches = new ArrayList<>();
+            log.batchesAfter(10, 16, SEGMENT_SIZE).forEach(batches::add);
+
+            assertThat(batches.get(0).firstId()).isEqualTo(11);
+            assertThat(batches).allSatisfy(batch -> assertThat(batch.lastId() - batch.firstId()).isLessThan(16));
+            for (int i = 1; i < batches.size(); i++) {
+                assertThat(batches.get(i).firstId()).isEqualTo(batches.get(i - 1).lastId() + 1);
+            }
+            assertThat(batches.get(batches.size() - 1).lastId()).isEqualTo(300);
+            String first = text(batches.get(0).bytes());
+            assertThat(first).startsWith(":").contains("\nid:11\ndata:x\n\n").endsWith("id:26\ndata:x\n\n");
+            assertThat(first.lines().filter(line -> line.startsWith("id:"))).hasSize(16);
+        }
+    }
+
+    @Test
+    void archivesRetiredSegmentsAndReadsThroughToThem() throws IOException {
+        Path archiveDirectory = directory.resolve("archive");
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE, 2, Duration.ofMillis(50),
+                Archive.open(archiveDirectory, 16, 4, Long.MAX_VALUE))) {
+            for (long id = 1; id <= 1_000; id++) {
+                log.append(id, payload(id));
+            }
+        }
+
+        Archive archive = Archive.open(archiveDirectory, 16, 4, Long.MAX_VALUE);
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE, 2, Duration.ofMillis(50), archive)) {
+            assertThat(archive.firstId()).isEqualTo(1);
+            assertThat(archive.totalBytes()).isPositive();
+            assertThat(log.segmentCount()).isEqualTo(2);
+            assertThat(log.firstId()).isEqualTo(1);
+            assertThat(text(log.read(7))).isEqualTo("record 7");
+            assertThat(texts(log.after(0))).hasSize(1_000).last().isEqualTo("record 1000");
+
+            List<RecordBatch> batches = new ArrayList<>();
+            log.batchesAfter(0, 10, SEGMENT_SIZE).forEach(batches::add);
+            assertThat(batches.get(0).firstId()).isEqualTo(1);
+            assertThat(batches.get(batches.size() - 1).lastId()).isEqualTo(1_000);
+            for (int i = 1; i < batches.size(); i++) {
+                assertThat(batches.get(i).firstId()).isEqualTo(batches.get(i - 1).lastId() + 1);
+            }
+            assertThat(archive.cacheHits()).isPositive();
+        }
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            assertThat(files).isNotEmpty().allSatisfy(file -> assertThat(file.toString()).endsWith(".archive"));
+        }
+    }
+
+    @Test
+    void keepsASegmentThatFailedToArchiveAndRetriesItOnTheNextRoll() throws Exception {
+        Path archiveDirectory = directory.resolve("archive");
+        Archive archive = Archive.open(archiveDirectory, 16, 4, Long.MAX_VALUE);
+        // A directory where the first segment's temporary archive file goes makes archiving it fail
+        Path blocker = Files.createDirectory(archiveDirectory.resolve(String.format("%020d.archive.tmp", 1)));
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE, 2, Duration.ofMillis(50), archive)) {
+            for (long id = 1; id <= 1_000; id++) {
+                log.append(id, payload(id));
+            }
+            // Give the archive thread time to try, and fail, more than once
+            Thread.sleep(300);
+            assertThat(log.segmentCount()).isGreaterThan(2);
+            assertThat(archive.lastId()).as("nothing is archived past the failed segment").isZero();
+            assertThat(text(log.read(1))).isEqualTo("record 1");
+
+            Files.delete(blocker);
+            for (long id = 1_001; id <= 1_200; id++) {
+                log.append(id, payload(id));
+            }
+            awaitTrue(() -> log.segmentCount() == 2);
+
+            assertThat(archive.firstId()).isEqualTo(1);
+            assertThat(texts(log.after(0))).hasSize(1_200).first().isEqualTo("record 1");
+        }
+    }
+
+    @Test
+    void archiveFilesBeyondTheLimitStayReadableUntilTheirReadersAreDone() throws Exception {
+        Archive archive = Archive.open(directory.resolve("archive"), 4, 0, 1);
+        ConcurrentLinkedQueue<String> wrong = new ConcurrentLinkedQueue<>();
+        AtomicBoolean appending = new AtomicBoolean(true);
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE, 1, Duration.ofMillis(50), archive)) {
+            List<Thread> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                Thread reader = Thread.ofPlatform().start(() -> {
+                    while (appending.get()) {
+                        long first = archive.firstId();
+                        for (long id = first; id < first + 64 && id <= archive.lastId(); id++) {
+                            ByteBuffer record = archive.read(id);
+                            if (record != null && !text(record).equals("record " + id)) {
+                                wrong.add(text(record));
+                            }
+                        }
+                    }
+                });
+                readers.add(reader);
+            }
+            for (long id = 1; id <= 20_000; id++) {
+                log.append(id, payload(id));
+            }
+            awaitTrue(() -> log.segmentCount() == 1);
+            appending.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertThat(wrong).isEmpty();
+            assertThat(archive.readFailures()).isZero();
+            assertThat(archive.firstId()).isGreaterThan(1);
+        }
+        try (Stream<Path> files = Files.list(directory.resolve("archive"))) {
+            // Only the newest file survives a limit of one byte; the retired ones were deleted
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}